@@ -0,0 +1,93 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * This class checks that a steady-state simulation tick allocates no memory.
+ * For each bundled species and each execution engine, it runs a headless
+ * match against Food until the engine has warmed up, then measures the bytes
+ * allocated by the simulation thread over many more ticks. It exits with a
+ * non-zero status if any tick allocated anything.
+ *
+ * Run from the src directory, after compiling both src and bench:
+ *     java -cp <classes> AllocationCheck [species directory]
+ */
+public class AllocationCheck {
+
+    private static final int WORLD_SIZE = 64;
+    private static final int CREATURES_PER_SPECIES = 300;
+    private static final int WARMUP_TICKS = 20_000;
+    private static final int MEASURED_TICKS = 2_000;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) {
+        String directory = args.length > 0 ? args[0] : "species";
+
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("allocation measurement is not supported by this JVM");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        boolean failed = false;
+        String[] names = { "Rover", "Medusa", "Flytrap", "Hop" };
+        for (String name : names) {
+            for (ExecutionEngine engine : ExecutionEngine.values()) {
+                ExecutionEngine.setCurrent(engine);
+                World world = new World(WORLD_SIZE, WORLD_SIZE, SEED);
+                ArrayList<Creature> creatures = populate(world,
+                    directory + "/" + name + ".txt", directory + "/Food.txt");
+
+                for (int i = 0; i < WARMUP_TICKS; i++) {
+                    tick(world, creatures);
+                }
+
+                // the cost of the measurement itself, which is subtracted
+                long overhead = -threads.getCurrentThreadAllocatedBytes()
+                    + threads.getCurrentThreadAllocatedBytes();
+                long before = threads.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < MEASURED_TICKS; i++) {
+                    tick(world, creatures);
+                }
+                long allocated = threads.getCurrentThreadAllocatedBytes() - before - overhead;
+
+                System.out.printf("%-8s %-12s %,10d bytes over %,d ticks%n",
+                    name, engine, allocated, MEASURED_TICKS);
+                failed |= allocated > 0;
+            }
+        }
+        if (failed) {
+            System.out.println("FAILED: steady-state ticks allocated memory");
+            System.exit(1);
+        }
+    }
+
+    private static ArrayList<Creature> populate(World world, String speciesFile,
+            String foodFile) {
+        ArrayList<Creature> creatures = new ArrayList<>();
+        for (Species species : new Species[] { new Species(speciesFile, null),
+                new Species(foodFile, null) }) {
+            for (int i = 0; i < CREATURES_PER_SPECIES; i++) {
+                int x = world.randomX();
+                int y = world.randomY();
+                while (world.get(x, y) != null) {
+                    x = world.randomX();
+                    y = world.randomY();
+                }
+                Creature creature = new Creature(species, world, x, y, Direction.random(world.random()));
+                world.set(x, y, creature);
+                creatures.add(creature);
+            }
+        }
+        return creatures;
+    }
+
+    private static void tick(World world, ArrayList<Creature> creatures) {
+        world.random().shuffle(creatures);
+        for (int i = 0; i < creatures.size(); i++) {
+            creatures.get(i).execute();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class checks that a saved and restored match carries on as the saved
+ * one does. For each way of ticking, it runs a seeded match of the same
+ * species file in two colors against Food, saves it, restores it, and runs
+ * both on, failing if the population of any species differs at any tick. It
+ * also checks that a restore given two species of the same name and color
+ * is rejected.
+ *
+ * Run from the src directory, after compiling both src and bench:
+ *     java -cp <classes> CheckpointCheck [species directory]
+ */
+public class CheckpointCheck {
+
+    private static final int WORLD_SIZE = 16;
+    private static final int CREATURES_PER_SPECIES = 10;
+    private static final int TICKS_BEFORE = 5;
+    private static final int TICKS_AFTER = 200;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws IOException {
+        String directory = args.length > 0 ? args[0] : "species";
+        String rover = directory + "/Rover.txt";
+        String food = directory + "/Food.txt";
+        Path file = Files.createTempFile("checkpoint", ".bfc");
+        boolean failed = false;
+        try {
+            for (Simulation.Mode mode : Simulation.Mode.values()) {
+                List<Species> species = Arrays.asList(new Species(rover, Color.RED),
+                    new Species(rover, Color.BLUE), new Species(food, Color.GREEN));
+                Simulation simulation = new Simulation(new World(WORLD_SIZE, WORLD_SIZE, SEED), mode);
+                for (Species s : species) {
+                    for (int i = 0; i < CREATURES_PER_SPECIES; i++) {
+                        simulation.addAtRandom(s);
+                    }
+                }
+                simulation.run(TICKS_BEFORE);
+                Checkpoint.save(simulation, file);
+
+                // the same species, loaded again in another order
+                List<Species> given = Arrays.asList(new Species(food, Color.GREEN),
+                    new Species(rover, Color.BLUE), new Species(rover, Color.RED));
+                Simulation restored = Checkpoint.restore(file, given);
+                String result = null;
+                for (int tick = 0; tick <= TICKS_AFTER && result == null; tick++) {
+                    if (tick > 0) {
+                        simulation.tick();
+                        restored.tick();
+                    }
+                    for (int i = 0; i < species.size(); i++) {
+                        int expected = simulation.population(species.get(i));
+                        int actual = restored.population(given.get(given.size() - 1 - i));
+                        if (expected != actual) {
+                            result = "tick " + (TICKS_BEFORE + tick) + ": species " + i
+                                + " has " + actual + " creatures, not " + expected;
+                            break;
+                        }
+                    }
+                }
+                simulation.finish();
+                restored.finish();
+                System.out.printf("%-12s %s%n", mode, result == null ? "ok" : result);
+                failed |= result != null;
+            }
+
+            try {
+                Checkpoint.restore(file, Arrays.asList(new Species(rover, Color.RED),
+                    new Species(rover, Color.RED), new Species(rover, Color.BLUE),
+                    new Species(food, Color.GREEN))).finish();
+                System.out.println("ambiguous   restored");
+                failed = true;
+            } catch (IllegalArgumentException e) {
+                System.out.println("ambiguous   rejected: " + e.getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        if (failed) {
+            System.out.println("FAILED: a restored match differs from its saved one");
+            System.exit(1);
+        }
+    }
+
+}
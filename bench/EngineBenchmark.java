@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class measures how fast each execution engine runs the bundled species
+ * programs. For every species, a world is populated with creatures of that
+ * species and an equal number of Food creatures for them to sense and infect,
+ * and the simulation runs without a window. The result is reported in steps
+ * (creature turns) per second. The same matches are also run in the
+ * data-oriented mode of CreatureArrays.
+ *
+ * Before measuring, every engine runs the same seeded match, and the final
+ * state of every creature is compared to check that the engines agree.
+ *
+ * Run from the src directory, after compiling both src and bench:
+ *     java -cp <classes> EngineBenchmark [species directory]
+ */
+public class EngineBenchmark {
+
+    private static final int WORLD_SIZE = 64;
+    private static final int CREATURES_PER_SPECIES = 300;
+    private static final int VERIFY_TICKS = 1000;
+    private static final int WARMUP_TICKS = 2000;
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) {
+        String directory = args.length > 0 ? args[0] : "species";
+
+        String[] names = { "Rover", "Medusa", "Flytrap" };
+        for (String name : names) {
+            String speciesFile = directory + "/" + name + ".txt";
+            String foodFile = directory + "/Food.txt";
+
+            verify(name, speciesFile, foodFile);
+
+            for (ExecutionEngine engine : ExecutionEngine.values()) {
+                ExecutionEngine.setCurrent(engine);
+                Match match = new Match(speciesFile, foodFile);
+                double rate = measure(match::tick, match.creatures.size());
+                System.out.printf("%-8s %-12s %,15.0f steps/s%n", name, engine, rate);
+            }
+            CreatureArrays arrays = populate(speciesFile, foodFile);
+            double rate = measure(arrays::tick, arrays.size());
+            System.out.printf("%-8s %-12s %,15.0f steps/s%n", name, "arrays", rate);
+        }
+    }
+
+    /*
+     * Run the same seeded match with every engine, and fail if any of them
+     * ends in a different state.
+     */
+    private static void verify(String name, String speciesFile, String foodFile) {
+        int[] expected = null;
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            ExecutionEngine.setCurrent(engine);
+            Match match = new Match(speciesFile, foodFile);
+            for (int i = 0; i < VERIFY_TICKS; i++) {
+                match.tick();
+            }
+            expected = check(name, engine.toString(), expected, match.state());
+        }
+        CreatureArrays arrays = populate(speciesFile, foodFile);
+        for (int i = 0; i < VERIFY_TICKS; i++) {
+            arrays.tick();
+        }
+        check(name, "arrays", expected, state(arrays));
+    }
+
+    private static int[] check(String name, String engine, int[] expected, int[] actual) {
+        if (expected != null && !Arrays.equals(expected, actual)) {
+            throw new IllegalStateException(
+                name + ": " + engine + " engine disagrees with the interpreter");
+        }
+        return actual;
+    }
+
+    /*
+     * Return the number of creature turns per second of the given tick, once
+     * it has warmed up.
+     */
+    private static double measure(Runnable tick, int creatures) {
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            tick.run();
+        }
+
+        long steps = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            tick.run();
+            steps += creatures;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+
+        return steps * 1e9 / elapsed;
+    }
+
+    /*
+     * A seeded match of Creature objects.
+     */
+    private static class Match {
+        private final World world = new World(WORLD_SIZE, WORLD_SIZE, SEED);
+        private final Species[] species;
+        private final ArrayList<Creature> created = new ArrayList<>();
+        private final ArrayList<Creature> creatures = new ArrayList<>();
+
+        private Match(String speciesFile, String foodFile) {
+            species = new Species[] { new Species(speciesFile, null),
+                new Species(foodFile, null) };
+            for (Species s : species) {
+                for (int i = 0; i < CREATURES_PER_SPECIES; i++) {
+                    int x = world.randomX();
+                    int y = world.randomY();
+                    while (world.get(x, y) != null) {
+                        x = world.randomX();
+                        y = world.randomY();
+                    }
+                    Creature creature = new Creature(s, world, x, y,
+                        Direction.random(world.random()));
+                    world.set(x, y, creature);
+                    created.add(creature);
+                }
+            }
+            creatures.addAll(created);
+        }
+
+        private void tick() {
+            world.random().shuffle(creatures);
+            for (int i = 0; i < creatures.size(); i++) {
+                creatures.get(i).execute();
+            }
+        }
+
+        // the state of every creature, in the order they were created
+        private int[] state() {
+            int[] state = new int[created.size() * 5];
+            for (int i = 0; i < created.size(); i++) {
+                Creature c = created.get(i);
+                state[i * 5] = c.x();
+                state[i * 5 + 1] = c.y();
+                state[i * 5 + 2] = c.direction().ordinal();
+                state[i * 5 + 3] = c.species() == species[0] ? 0 : 1;
+                state[i * 5 + 4] = c.getCounter();
+            }
+            return state;
+        }
+    }
+
+    /*
+     * Set up the same seeded match as Match, with the creatures stored in
+     * arrays.
+     */
+    private static CreatureArrays populate(String speciesFile, String foodFile) {
+        CreatureArrays arrays = new CreatureArrays(WORLD_SIZE, WORLD_SIZE, SEED);
+        WorldRandom rand = arrays.random();
+        for (String file : new String[] { speciesFile, foodFile }) {
+            Species s = new Species(file, null);
+            for (int i = 0; i < CREATURES_PER_SPECIES; i++) {
+                int x = rand.nextInt(WORLD_SIZE);
+                int y = rand.nextInt(WORLD_SIZE);
+                while (arrays.creatureAt(x, y) >= 0) {
+                    x = rand.nextInt(WORLD_SIZE);
+                    y = rand.nextInt(WORLD_SIZE);
+                }
+                arrays.add(s, x, y, Direction.random(rand));
+            }
+        }
+        return arrays;
+    }
+
+    // the state of every creature, in the order they were added
+    private static int[] state(CreatureArrays arrays) {
+        Species first = arrays.species(0);
+        int[] state = new int[arrays.size() * 5];
+        for (int i = 0; i < arrays.size(); i++) {
+            state[i * 5] = arrays.x(i);
+            state[i * 5 + 1] = arrays.y(i);
+            state[i * 5 + 2] = arrays.direction(i).ordinal();
+            state[i * 5 + 3] = arrays.species(i) == first ? 0 : 1;
+            state[i * 5 + 4] = arrays.counter(i);
+        }
+        return state;
+    }
+
+}
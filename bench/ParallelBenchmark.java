@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class measures how ParallelTicker and SynchronousTicker scale with the
+ * number of threads. A large world is populated with Rover creatures and an
+ * equal number of Food creatures, and ticked on pools of 1, 2, 4, ... threads,
+ * up to the number of processors.
+ *
+ * Before measuring, the same seeded match is run on pools of 1, 2 and 4
+ * threads (or more, up to the number of processors), and the final state of
+ * every creature is compared to check that the result does not depend on the
+ * number of threads.
+ *
+ * Run from the src directory, after compiling both src and bench:
+ *     java -cp <classes> ParallelBenchmark [world size]
+ */
+public class ParallelBenchmark {
+
+    private static final int DEFAULT_WORLD_SIZE = 1024;
+    private static final int VERIFY_TICKS = 200;
+    private static final int WARMUP_TICKS = 200;
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_WORLD_SIZE;
+
+        // the result must not depend on the number of threads, even where
+        // there are fewer processors than threads
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (boolean synchronous : new boolean[] { false, true }) {
+            String mode = synchronous ? "synchronous" : "tiled";
+            int[] expected = null;
+            for (int threads = 1; threads <= Math.max(processors, 4); threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                Match match = new Match(size, pool, synchronous);
+                for (int i = 0; i < VERIFY_TICKS; i++) {
+                    match.tick();
+                }
+                int[] state = match.state();
+                if (expected != null && !Arrays.equals(expected, state)) {
+                    throw new IllegalStateException(
+                        mode + ": " + threads + " threads disagree with 1 thread");
+                }
+                expected = state;
+                pool.shutdown();
+            }
+
+            for (int threads = 1; threads <= processors; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                double rate = measure(new Match(size, pool, synchronous));
+                System.out.printf("%-12s %3d threads %,15.0f steps/s%n", mode, threads, rate);
+                pool.shutdown();
+            }
+        }
+    }
+
+    // the number of creature turns per second, once the match has warmed up
+    private static double measure(Match match) {
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            match.tick();
+        }
+        long steps = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            match.tick();
+            steps += match.creatures.size();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return steps * 1e9 / elapsed;
+    }
+
+    /*
+     * A seeded match filling an eighth of the world.
+     */
+    private static class Match {
+        private final Species rover = new Species("species/Rover.txt", null);
+        private final Species food = new Species("species/Food.txt", null);
+        private final ArrayList<Creature> creatures = new ArrayList<>();
+        private final Runnable tick;
+
+        private Match(int size, ForkJoinPool pool, boolean synchronous) {
+            World world = new World(size, size, SEED);
+            int perSpecies = size * size / 16;
+            for (Species s : new Species[] { rover, food }) {
+                for (int i = 0; i < perSpecies; i++) {
+                    int x = world.randomX();
+                    int y = world.randomY();
+                    while (world.occupied(x, y)) {
+                        x = world.randomX();
+                        y = world.randomY();
+                    }
+                    Creature creature = new Creature(s, world, x, y,
+                        Direction.random(world.random()));
+                    world.set(x, y, creature);
+                    creatures.add(creature);
+                }
+            }
+            if (synchronous) {
+                // a parallel stream runs on the pool of the task that starts it
+                SynchronousTicker ticker = new SynchronousTicker(world, creatures);
+                tick = () -> pool.submit(ticker::tick).join();
+            } else {
+                ParallelTicker ticker = new ParallelTicker(world, creatures,
+                    ParallelTicker.DEFAULT_TILE_SIZE, ParallelTicker.DEFAULT_TILE_SIZE, pool);
+                tick = ticker::tick;
+            }
+        }
+
+        private void tick() {
+            tick.run();
+        }
+
+        // the state of every creature, in the order they were created
+        private int[] state() {
+            int[] state = new int[creatures.size() * 5];
+            for (int i = 0; i < creatures.size(); i++) {
+                Creature c = creatures.get(i);
+                state[i * 5] = c.x();
+                state[i * 5 + 1] = c.y();
+                state[i * 5 + 2] = c.direction().ordinal();
+                state[i * 5 + 3] = c.species() == rover ? 0 : 1;
+                state[i * 5 + 4] = c.getCounter();
+            }
+            return state;
+        }
+    }
+
+}
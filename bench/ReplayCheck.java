@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * This class checks that a recorded match replays as it was played. For each
+ * way of ticking and each execution engine, it records a seeded match of a
+ * species that turns without a turn instruction (a taken ifwall) against
+ * Food, noting how every square looked after every tick. It then plays the
+ * recording forward a tick at a time, and seeks to every tick backwards,
+ * and fails if any square differs from the live match.
+ *
+ * Run from the src directory, after compiling both src and bench:
+ *     java -cp <classes> ReplayCheck [species directory]
+ */
+public class ReplayCheck {
+
+    private static final int WORLD_SIZE = 12;
+    private static final int CREATURES_PER_SPECIES = 20;
+    private static final int TICKS = 50;
+    private static final int KEYFRAME_INTERVAL = 16;
+    private static final long SEED = 7;
+
+    // hops until it meets a wall, which turns it left without a turn
+    // instruction, then hops away from it
+    private static final String BOUNCER_PROGRAM = String.join("\n",
+        "Bouncer", "start:", "ifwall bounce", "hop", "go start",
+        "bounce:", "hop", "go start", "");
+
+    public static void main(String[] args) throws IOException {
+        String directory = args.length > 0 ? args[0] : "species";
+        Path program = Files.createTempFile("Bouncer", ".txt");
+        Path recording = Files.createTempFile("replay", ".bfr");
+        try {
+            Files.writeString(program, BOUNCER_PROGRAM);
+            boolean failed = false;
+            for (Simulation.Mode mode : Simulation.Mode.values()) {
+                for (ExecutionEngine engine : ExecutionEngine.values()) {
+                    ExecutionEngine.setCurrent(engine);
+                    String result = check(mode, program.toString(),
+                        directory + "/Food.txt", recording);
+                    System.out.printf("%-12s %-12s %s%n", mode, engine,
+                        result == null ? "ok" : result);
+                    failed |= result != null;
+                }
+            }
+            if (failed) {
+                System.out.println("FAILED: a replay differs from its match");
+                System.exit(1);
+            }
+        } finally {
+            Files.deleteIfExists(program);
+            Files.deleteIfExists(recording);
+        }
+    }
+
+    /*
+     * Record a match and replay it, returning where the replay first
+     * differs from the match, or null if it never does.
+     */
+    private static String check(Simulation.Mode mode, String speciesFile, String foodFile,
+            Path recording) throws IOException {
+        World world = new World(WORLD_SIZE, WORLD_SIZE, SEED);
+        Simulation simulation = new Simulation(world, mode);
+        for (Species species : new Species[] { new Species(speciesFile, null),
+                new Species(foodFile, null) }) {
+            for (int i = 0; i < CREATURES_PER_SPECIES; i++) {
+                simulation.addAtRandom(species);
+            }
+        }
+        ArrayList<String[]> expected = new ArrayList<>();
+        try (ReplayRecorder recorder =
+                new ReplayRecorder(simulation, recording, KEYFRAME_INTERVAL)) {
+            world.setListener(recorder);
+            expected.add(squares(world));
+            for (int i = 0; i < TICKS; i++) {
+                simulation.tick();
+                expected.add(squares(world));
+            }
+        }
+        simulation.finish();
+
+        try (ReplayPlayer player = new ReplayPlayer(recording)) {
+            for (int tick = 0; tick <= TICKS; tick++) {
+                if (tick > 0) {
+                    player.step();
+                }
+                String difference = compare("step", tick, expected.get(tick), squares(player));
+                if (difference != null) {
+                    return difference;
+                }
+            }
+            for (int tick = TICKS; tick >= 0; tick--) {
+                player.seek(tick);
+                String difference = compare("seek", tick, expected.get(tick), squares(player));
+                if (difference != null) {
+                    return difference;
+                }
+            }
+        }
+        return null;
+    }
+
+    // where two views of the world first differ, or null if they are the same
+    private static String compare(String how, int tick, String[] expected, String[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            if (!expected[i].equals(actual[i])) {
+                return how + " to tick " + tick + ": square " + i % WORLD_SIZE + ","
+                    + i / WORLD_SIZE + " is " + actual[i] + ", not " + expected[i];
+            }
+        }
+        return null;
+    }
+
+    // the species and direction of the creature on every square of a world
+    private static String[] squares(World world) {
+        String[] squares = new String[WORLD_SIZE * WORLD_SIZE];
+        for (int y = 0; y < WORLD_SIZE; y++) {
+            for (int x = 0; x < WORLD_SIZE; x++) {
+                Creature creature = world.get(x, y);
+                squares[y * WORLD_SIZE + x] = creature == null ? "empty"
+                    : creature.species().getName() + " " + creature.direction();
+            }
+        }
+        return squares;
+    }
+
+    // the species and direction of the creature on every square of a replay
+    private static String[] squares(ReplayPlayer player) {
+        String[] squares = new String[WORLD_SIZE * WORLD_SIZE];
+        for (int y = 0; y < WORLD_SIZE; y++) {
+            for (int x = 0; x < WORLD_SIZE; x++) {
+                short id = player.squareAt(x, y);
+                squares[y * WORLD_SIZE + x] = id == World.EMPTY ? "empty"
+                    : player.speciesName(id) + " " + player.directionAt(x, y);
+            }
+        }
+        return squares;
+    }
+
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.function.LongSupplier;
+
+import bugfight.bench.Workloads;
+
+/**
+ * This class sets up the operations measured by bugfight.bench.MicroBenchmark:
+ * Creature.execute for several mixes of opcodes on each engine, World.get,
+ * set and inBounds, Position.getAdjacent, Species.getLabelAddress and
+ * Species.parser, and whole headless Simulation ticks. It is in the unnamed
+ * package, with the engine, so that it can use the engine directly.
+ *
+ * Species files are read from the directory given by -Dbench.species, which
+ * is the species directory by default, so benchmarks run from src.
+ */
+public class MicroWorkloads implements Workloads {
+
+    private static final String SPECIES = System.getProperty("bench.species", "species");
+
+    private static final int WORLD_SIZE = 64;
+    private static final int CREATURES_PER_SPECIES = 300;
+    private static final long SEED = 42;
+
+    // a program that is mostly tests, with an action only when they all fail
+    private static final String SENSING_PROGRAM = String.join("\n",
+        "Sensing", "start:", "ifwall turn", "ifenemy turn", "ifsame turn",
+        "ifrandom turn", "ifempty turn", "ifwall turn", "go start",
+        "turn:", "left", "go start", "");
+
+    @Override
+    public LongSupplier execute(String mix, String engine) {
+        ExecutionEngine.setCurrent(ExecutionEngine.fromString(engine));
+        World world = new World(WORLD_SIZE, WORLD_SIZE, SEED);
+        ArrayList<Creature> creatures = new ArrayList<>();
+        for (Species species : new Species[] { load(mix), load("Food") }) {
+            for (int i = 0; i < CREATURES_PER_SPECIES; i++) {
+                int x = world.randomX();
+                int y = world.randomY();
+                while (world.get(x, y) != null) {
+                    x = world.randomX();
+                    y = world.randomY();
+                }
+                Creature creature = new Creature(species, world, x, y,
+                    Direction.random(world.random()));
+                world.set(x, y, creature);
+                creatures.add(creature);
+            }
+        }
+        return () -> {
+            world.random().shuffle(creatures);
+            for (int i = 0; i < creatures.size(); i++) {
+                creatures.get(i).execute();
+            }
+            return creatures.get(0).getCounter();
+        };
+    }
+
+    @Override
+    public LongSupplier worldGet() {
+        World world = halfFull();
+        int[] xs = randomCoordinates(WORLD_SIZE, 1);
+        int[] ys = randomCoordinates(WORLD_SIZE, 2);
+        int[] next = { 0 };
+        return () -> {
+            int k = next[0]++ & (xs.length - 1);
+            return world.get(xs[k], ys[k]) != null ? 1 : 0;
+        };
+    }
+
+    @Override
+    public LongSupplier worldSet() {
+        World world = new World(WORLD_SIZE, WORLD_SIZE, SEED);
+        Creature creature = new Creature(load("Food"), world, 0, 0, Direction.NORTH);
+        int[] xs = randomCoordinates(WORLD_SIZE, 1);
+        int[] ys = randomCoordinates(WORLD_SIZE, 2);
+        int[] next = { 0 };
+        return () -> {
+            // each square is set and then cleared
+            int i = next[0]++;
+            int k = (i >>> 1) & (xs.length - 1);
+            world.set(xs[k], ys[k], (i & 1) == 0 ? creature : null);
+            return world.population();
+        };
+    }
+
+    @Override
+    public LongSupplier worldInBounds() {
+        World world = new World(WORLD_SIZE, WORLD_SIZE, SEED);
+        int[] xs = randomCoordinates(WORLD_SIZE * 2, 1);
+        int[] ys = randomCoordinates(WORLD_SIZE * 2, 2);
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] -= WORLD_SIZE / 2;
+            ys[i] -= WORLD_SIZE / 2;
+        }
+        int[] next = { 0 };
+        return () -> {
+            int k = next[0]++ & (xs.length - 1);
+            return world.inBounds(xs[k], ys[k]) ? 1 : 0;
+        };
+    }
+
+    @Override
+    public LongSupplier getAdjacent() {
+        Direction[] directions = Direction.values();
+        Position[] positions = new Position[1024];
+        int[] xs = randomCoordinates(WORLD_SIZE, 1);
+        int[] ys = randomCoordinates(WORLD_SIZE, 2);
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new Position(xs[i], ys[i]);
+        }
+        int[] next = { 0 };
+        return () -> {
+            int i = next[0]++;
+            Position adjacent = positions[i & (positions.length - 1)]
+                .getAdjacent(directions[(i & Integer.MAX_VALUE) % directions.length]);
+            return adjacent.getX() + adjacent.getY();
+        };
+    }
+
+    @Override
+    public LongSupplier getLabelAddress() {
+        Species species = load("Rover");
+        String[] labels = { "start", "randomturn", "turnright", "doinfect" };
+        int[] next = { 0 };
+        return () -> species.getLabelAddress(labels[next[0]++ & (labels.length - 1)]);
+    }
+
+    @Override
+    public LongSupplier parser() {
+        Species species = load("Rover");
+        String file = SPECIES + "/Rover.txt";
+        return () -> species.parser(file).size();
+    }
+
+    @Override
+    public LongSupplier tick(int population) {
+        ExecutionEngine.setCurrent(ExecutionEngine.INTERPRETER);
+        int size = (int) Math.ceil(Math.sqrt(population * 4.0));
+        Simulation simulation = new Simulation(new World(size, size, SEED));
+        Species rover = load("Rover");
+        Species food = load("Food");
+        for (int i = 0; i < population; i++) {
+            simulation.addAtRandom(i % 2 == 0 ? rover : food);
+        }
+        return () -> {
+            simulation.tick();
+            return simulation.ticks();
+        };
+    }
+
+    // a species from the species directory, or the sensing program
+    private static Species load(String name) {
+        if (!name.equals("Sensing")) {
+            return new Species(SPECIES + "/" + name + ".txt", null);
+        }
+        try {
+            Path file = Files.createTempFile("Sensing", ".txt");
+            file.toFile().deleteOnExit();
+            Files.writeString(file, SENSING_PROGRAM);
+            return new Species(file.toString(), null);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot write the sensing program", e);
+        }
+    }
+
+    // a world with Food on every other square
+    private static World halfFull() {
+        World world = new World(WORLD_SIZE, WORLD_SIZE, SEED);
+        Species food = load("Food");
+        for (int y = 0; y < WORLD_SIZE; y++) {
+            for (int x = (y & 1); x < WORLD_SIZE; x += 2) {
+                world.set(x, y, new Creature(food, world, x, y, Direction.NORTH));
+            }
+        }
+        return world;
+    }
+
+    // 1024 seeded random coordinates below a bound
+    private static int[] randomCoordinates(int bound, long seed) {
+        WorldRandom random = new WorldRandom(seed);
+        int[] coordinates = new int[1024];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = random.nextInt(bound);
+        }
+        return coordinates;
+    }
+
+}
@@ -0,0 +1,153 @@
+package bugfight.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures the building blocks of the engine one at a time:
+ * Creature.execute for several mixes of opcodes on each engine, World.get,
+ * set and inBounds, Position.getAdjacent, Species.getLabelAddress and
+ * Species.parser, and whole headless Simulation ticks at several population
+ * sizes. The operations are set up by MicroWorkloads; see Workloads for why.
+ *
+ * Run from the project directory with
+ *     gradle jmh [-Pjmh.include=regular expression]
+ * which runs the benchmarks from the src directory, so the species files
+ * are found, with the gc profiler reporting the bytes allocated per
+ * operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MicroBenchmark {
+
+    /**
+     * The number of creature steps in one call of execute: one step of each
+     * creature of the species and of as many Food creatures.
+     */
+    public static final int STEPS = 600;
+
+    /**
+     * Creatures of one species and as many Food creatures in a seeded world.
+     */
+    @State(Scope.Thread)
+    public static class Execute {
+        @Param({ "Hop", "Food", "Rover", "Flytrap", "Medusa", "Sensing" })
+        public String species;
+
+        @Param({ "interpreter", "jit" })
+        public String engine;
+
+        LongSupplier operation;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            operation = Workloads.load().execute(species, engine);
+        }
+    }
+
+    /**
+     * A headless simulation of Rovers and Food.
+     */
+    @State(Scope.Thread)
+    public static class Tick {
+        @Param({ "100", "1000", "10000", "100000" })
+        public int population;
+
+        LongSupplier operation;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            operation = Workloads.load().tick(population);
+        }
+    }
+
+    /**
+     * The operations on a world, position or species, which have nothing to
+     * vary.
+     */
+    @State(Scope.Thread)
+    public static class Pieces {
+        LongSupplier worldGet;
+        LongSupplier worldSet;
+        LongSupplier worldInBounds;
+        LongSupplier getAdjacent;
+        LongSupplier getLabelAddress;
+        LongSupplier parser;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Workloads workloads = Workloads.load();
+            worldGet = workloads.worldGet();
+            worldSet = workloads.worldSet();
+            worldInBounds = workloads.worldInBounds();
+            getAdjacent = workloads.getAdjacent();
+            getLabelAddress = workloads.getLabelAddress();
+            parser = workloads.parser();
+        }
+    }
+
+    /**
+     * One creature step; each call steps every creature once.
+     */
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public long execute(Execute state) {
+        return state.operation.getAsLong();
+    }
+
+    @Benchmark
+    public long worldGet(Pieces state) {
+        return state.worldGet.getAsLong();
+    }
+
+    @Benchmark
+    public long worldSet(Pieces state) {
+        return state.worldSet.getAsLong();
+    }
+
+    @Benchmark
+    public long worldInBounds(Pieces state) {
+        return state.worldInBounds.getAsLong();
+    }
+
+    @Benchmark
+    public long positionGetAdjacent(Pieces state) {
+        return state.getAdjacent.getAsLong();
+    }
+
+    @Benchmark
+    public long speciesGetLabelAddress(Pieces state) {
+        return state.getLabelAddress.getAsLong();
+    }
+
+    @Benchmark
+    public long speciesParser(Pieces state) {
+        return state.parser.getAsLong();
+    }
+
+    /**
+     * A whole tick, counted as one operation.
+     */
+    @Benchmark
+    public long simulationTick(Tick state) {
+        return state.operation.getAsLong();
+    }
+
+}
@@ -0,0 +1,83 @@
+package bugfight.bench;
+
+import java.util.function.LongSupplier;
+
+/**
+ * This interface represents the operations the microbenchmarks measure,
+ * each set up and ready to run. JMH only accepts benchmarks in a named
+ * package, and a class in a named package cannot refer to the classes of the
+ * engine, which are in the unnamed one; so the operations are made by
+ * MicroWorkloads, in the unnamed package, and reached through this
+ * interface. Each benchmark runs in a JVM of its own, where the only
+ * operation called is the one it measures, so the JIT compiler inlines the
+ * call to it.
+ *
+ * Each operation returns a value depending on its work, for JMH to consume.
+ */
+public interface Workloads {
+
+    /**
+     * Get the workloads of the engine.
+     *
+     * @return The workloads.
+     */
+    static Workloads load() {
+        try {
+            return (Workloads) Class.forName("MicroWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot load MicroWorkloads", e);
+        }
+    }
+
+    /**
+     * One step of every creature of a world holding a species and as many
+     * Food creatures.
+     *
+     * @param species The name of a bundled species, or Sensing for a
+     *        program that is mostly tests.
+     * @param engine The name of the execution engine.
+     * @return The operation.
+     */
+    LongSupplier execute(String species, String engine);
+
+    /**
+     * @return A lookup of a square of a half-full world.
+     */
+    LongSupplier worldGet();
+
+    /**
+     * @return A placing or clearing of a creature on a square of a world.
+     */
+    LongSupplier worldSet();
+
+    /**
+     * @return A bounds check of coordinates, a quarter of them out of
+     *         bounds.
+     */
+    LongSupplier worldInBounds();
+
+    /**
+     * @return A lookup of the position next to a position.
+     */
+    LongSupplier getAdjacent();
+
+    /**
+     * @return A lookup of the address of a label of the Rover program.
+     */
+    LongSupplier getLabelAddress();
+
+    /**
+     * @return A parse of the Rover species file.
+     */
+    LongSupplier parser();
+
+    /**
+     * A tick of a headless simulation of Rovers and Food, half of each, in a
+     * world four times as large as the population.
+     *
+     * @param population The number of creatures.
+     * @return The operation.
+     */
+    LongSupplier tick(int population);
+
+}
@@ -0,0 +1,306 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class writes species programs in a compact binary form, and loads
+ * them again through a memory mapping without parsing any text. A program
+ * is parsed and optimized once, when it is written; loading copies its
+ * arrays out of the file and checks them, since the file may be truncated,
+ * corrupted or written by something else: every compiled opcode must be
+ * its source opcode (or the superinstruction an ifenemy starts), every
+ * jump, infect and superinstruction must have a target within the program,
+ * and the compiled program must have no loop that never ends a turn. The
+ * checks take time linear in the size of the program.
+ *
+ * The file is little-endian, with every section aligned to four bytes:
+ *
+ * <pre>
+ * header   int magic, version, size (instructions), names, name (index)
+ * names    for each: int length, UTF-8 bytes, padded
+ * source   byte opcode[size], padded; int label[size] (index, or -1)
+ * compiled byte opcode[size], padded; int target[size], alternate[size],
+ *          next[size]
+ * </pre>
+ *
+ * The names are the species name and every label, each stored once. The
+ * source section is the program as written, for display and profiles; the
+ * compiled section is what the engine runs.
+ *
+ * Several programs may be kept in one file by writing the bytes of each,
+ * from toBytes, one after another, and reading them back in turn with
+ * fromBytes.
+ *
+ * Run from the src directory, after compiling:
+ *     java -cp <classes> BinarySpecies [species files]
+ * to write a .bfs file next to each species file given, or next to every
+ * .txt file in the species directory.
+ */
+public class BinarySpecies {
+
+    /**
+     * The extension of a binary species file.
+     */
+    public static final String EXTENSION = ".bfs";
+
+    // the first int of a binary species file, and its version
+    private static final int MAGIC = 0x42465350; // "BFSP"
+    private static final int VERSION = 1;
+
+    // the size of the header
+    private static final int HEADER_SIZE = 20;
+
+    // the opcodes, by ordinal
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    // not for instantiation
+    private BinarySpecies() {
+    }
+
+    /**
+     * Write a species program to a file.
+     *
+     * @param program The program to write.
+     * @param file The file to write, replacing any file already there.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(SpeciesProgram program, Path file) throws IOException {
+        Files.write(file, toBytes(program));
+    }
+
+    /**
+     * Get the binary form of a species program.
+     *
+     * @param program The program.
+     * @return The bytes of a binary species file.
+     */
+    public static byte[] toBytes(SpeciesProgram program) {
+        CompiledProgram compiled = program.compiled();
+        int size = compiled.size();
+
+        // the name table: the species name first, then each label once
+        LinkedHashMap<String, Integer> names = new LinkedHashMap<>();
+        names.put(program.name(), 0);
+        int[] labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            String label = compiled.instruction(i).getLabel();
+            labels[i] = label == null ? -1 : names.computeIfAbsent(label, k -> names.size());
+        }
+        byte[][] encoded = new byte[names.size()][];
+        int namesSize = 0;
+        for (String name : names.keySet()) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            encoded[names.get(name)] = bytes;
+            namesSize += 4 + align(bytes.length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + namesSize
+            + 2 * align(size) + 4 * 4 * size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(size);
+        buffer.putInt(encoded.length);
+        buffer.putInt(0);
+        for (byte[] name : encoded) {
+            buffer.putInt(name.length);
+            buffer.put(name);
+            buffer.position(align(buffer.position()));
+        }
+
+        for (int i = 0; i < size; i++) {
+            buffer.put((byte) compiled.instruction(i).getOpcode().ordinal());
+        }
+        buffer.position(align(buffer.position()));
+        buffer.asIntBuffer().put(labels);
+        buffer.position(buffer.position() + 4 * size);
+
+        buffer.put(compiled.opcodes());
+        buffer.position(align(buffer.position()));
+        buffer.asIntBuffer().put(compiled.targets());
+        buffer.position(buffer.position() + 4 * size);
+        buffer.asIntBuffer().put(compiled.alternates());
+        buffer.position(buffer.position() + 4 * size);
+        buffer.asIntBuffer().put(compiled.nexts());
+        return buffer.array();
+    }
+
+    /**
+     * Load a species program from a binary species file, through a memory
+     * mapping.
+     *
+     * @param file The file to read.
+     * @return The program.
+     * @throws IOException If the file cannot be read or is not a binary
+     *         species file.
+     */
+    public static SpeciesProgram load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("not a binary species file: " + file);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                return fromBytes(map);
+            } catch (IOException e) {
+                throw new IOException(e.getMessage() + ": " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Load a species program from the bytes of a binary species file, and
+     * move the buffer's position past them. Programs written one after
+     * another into a single file can so be read, in turn, from one mapping
+     * of it, which saves opening and mapping a file for each.
+     *
+     * @param buffer The bytes, from the buffer's position on.
+     * @return The program.
+     * @throws IOException If the bytes are not a binary species file.
+     */
+    public static SpeciesProgram fromBytes(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("not a binary species file");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("unknown binary species version " + version);
+            }
+            int size = in.getInt();
+            String[] names = new String[in.getInt()];
+            int name = in.getInt();
+            if (size < 0 || name < 0 || name >= names.length) {
+                throw new IOException("bad binary species header");
+            }
+            for (int i = 0; i < names.length; i++) {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+                in.position(align(in.position()));
+            }
+
+            byte[] source = new byte[size];
+            int[] labels = new int[size];
+            byte[] opcodes = new byte[size];
+            int[] targets = new int[size];
+            int[] alternates = new int[size];
+            int[] next = new int[size];
+            in.get(source);
+            in.position(align(in.position()));
+            in.asIntBuffer().get(labels);
+            in.position(in.position() + 4 * size);
+            in.get(opcodes);
+            in.position(align(in.position()));
+            in.asIntBuffer().get(targets);
+            in.position(in.position() + 4 * size);
+            in.asIntBuffer().get(alternates);
+            in.position(in.position() + 4 * size);
+            in.asIntBuffer().get(next);
+            buffer.position(buffer.position() + in.position() + 4 * size);
+
+            ArrayList<Instruction> instructions = new ArrayList<>(size);
+            HashMap<String, Integer> labelAddresses = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                if (source[i] < 0 || source[i] >= OPCODES.length
+                        || labels[i] < -1 || labels[i] >= names.length
+                        || !compiled(source[i], opcodes[i], targets[i], alternates[i], size)
+                        || next[i] < 0 || next[i] > size) {
+                    throw new IOException("bad instruction at address " + i);
+                }
+                Opcode opcode = OPCODES[source[i]];
+                Instruction instruction = labels[i] < 0 ? new Instruction(opcode)
+                    : new Instruction(opcode, names[labels[i]]);
+                instructions.add(instruction);
+                if (opcode == Opcode.LABEL) {
+                    // the first definition of a label wins, as it does when compiling
+                    labelAddresses.putIfAbsent(instruction.getLabel(), i);
+                }
+            }
+            CompiledProgram compiled = new CompiledProgram(
+                instructions, labelAddresses, opcodes, targets, alternates, next);
+            for (ProgramOptimizer.Cycle cycle : ProgramOptimizer.nonTerminatingCycles(compiled)) {
+                if (!cycle.canExit()) {
+                    throw new IOException("instructions at addresses "
+                        + Arrays.toString(cycle.addresses())
+                        + " loop forever without a hop, left, right or infect");
+                }
+            }
+            return new SpeciesProgram(names[name], instructions, compiled);
+        } catch (RuntimeException e) {
+            // a short buffer, a negative length, or an instruction without
+            // the label its opcode needs
+            throw new IOException("bad binary species file", e);
+        }
+    }
+
+    /*
+     * Whether a compiled instruction can be the compiled form of a source
+     * instruction, in a program of the given size. An instruction that jumps
+     * or infects has a target, and only a superinstruction has an alternate;
+     * like a fall-through, a target may be the end of the program.
+     */
+    private static boolean compiled(byte source, byte opcode, int target, int alternate,
+            int size) {
+        if (opcode != source
+                && !(source == CompiledProgram.IFENEMY && opcode == CompiledProgram.SENSE_HOP)) {
+            return false;
+        }
+        boolean jumps = opcode != CompiledProgram.HOP && opcode != CompiledProgram.LEFT
+            && opcode != CompiledProgram.RIGHT && opcode != CompiledProgram.LABEL;
+        if (jumps ? target < 0 || target > size : target != CompiledProgram.NO_TARGET) {
+            return false;
+        }
+        return opcode == CompiledProgram.SENSE_HOP
+            ? 0 <= alternate && alternate <= size : alternate == CompiledProgram.NO_TARGET;
+    }
+
+    // round an offset up to a multiple of four
+    private static int align(int offset) {
+        return (offset + 3) & -4;
+    }
+
+    /**
+     * Write a binary species file next to each species file given as an
+     * argument, or each in the species directory if there are none.
+     *
+     * @param args The species files.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(Paths.get(arg));
+        }
+        if (files.isEmpty()) {
+            try (Stream<Path> listing = Files.list(Paths.get("species"))) {
+                files = listing.filter(file -> file.getFileName().toString().endsWith(".txt"))
+                    .sorted().collect(Collectors.toList());
+            }
+        }
+        List<SpeciesProgram> programs = ProgramCache.shared().loadAll(files);
+        for (int i = 0; i < files.size(); i++) {
+            String text = files.get(i).toString();
+            Path binary = Paths.get((text.endsWith(".txt")
+                ? text.substring(0, text.length() - 4) : text) + EXTENSION);
+            save(programs.get(i), binary);
+            System.out.println(files.get(i) + " -> " + binary);
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * This class saves a running simulation to a memory-mapped file, and restores
+ * it: the size and kind of world, its random generator, the tick count and
+ * turn order, and every creature's position, direction, species, program
+ * counter and random stream. A restored simulation carries on exactly as the
+ * saved one would have.
+ *
+ * The file has a fixed layout: a header, the species by name and color, and
+ * then one column per creature field, each a flat array of primitives in the
+ * machine's byte order, so that saving and loading the creatures are bulk
+ * copies between arrays and the mapped file:
+ *
+ * <pre>
+ * header   int magic, version, width, height, flags, mode;
+ *          long ticks, seed, random state; int species, creatures;
+ *          long species offset, columns offset
+ * species  for each: int color (RGB + 1, or 0), int name length, name bytes
+ * columns  long random[n]; int x[n], y[n], counter[n], order[n];
+ *          short species[n]; byte direction[n]
+ * </pre>
+ */
+public class Checkpoint {
+
+    // the first int of a checkpoint file, and its version
+    private static final int MAGIC = 0x42464350; // "BFCP"
+    private static final int VERSION = 1;
+
+    // the size of the header, and the alignment of the columns
+    private static final int HEADER_SIZE = 80;
+    private static final int ALIGNMENT = 8;
+
+    // the flag of a SparseWorld
+    private static final int SPARSE = 1;
+
+    // the directions and modes, by ordinal
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Simulation.Mode[] MODES = Simulation.Mode.values();
+
+    // not for instantiation
+    private Checkpoint() {
+    }
+
+    /**
+     * Save a simulation to a file. This must not be called while the
+     * simulation is running a tick.
+     *
+     * @param simulation The simulation to save.
+     * @param file The file to write, replacing any file already there.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(Simulation simulation, Path file) throws IOException {
+        World world = simulation.world();
+        List<Creature> creatures = simulation.creatures();
+        int n = creatures.size();
+
+        // the columns, and the species they refer to
+        long[] randoms = new long[n];
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] counters = new int[n];
+        short[] speciesIndexes = new short[n];
+        byte[] dirs = new byte[n];
+        ArrayList<Species> species = new ArrayList<>();
+        IdentityHashMap<Species, Short> speciesIndex = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            Creature creature = creatures.get(i);
+            Short index = speciesIndex.get(creature.species());
+            if (index == null) {
+                index = (short) species.size();
+                species.add(creature.species());
+                speciesIndex.put(creature.species(), index);
+            }
+            randoms[i] = creature.randomState();
+            xs[i] = creature.x();
+            ys[i] = creature.y();
+            counters[i] = creature.getCounter();
+            speciesIndexes[i] = index;
+            dirs[i] = (byte) creature.direction().ordinal();
+        }
+        int[] order = simulation.turnOrder();
+
+        byte[][] names = new byte[species.size()][];
+        long speciesSize = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = species.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            speciesSize += 8 + names[i].length;
+        }
+        long columnsOffset = align(HEADER_SIZE + speciesSize);
+        long size = columnsOffset + (long) n * (8 + 4 * 4 + 2 + 1);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("checkpoint too large for one mapping: " + size + " bytes");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.nativeOrder());
+            map.putInt(MAGIC);
+            map.putInt(VERSION);
+            map.putInt(world.width());
+            map.putInt(world.height());
+            map.putInt(world instanceof SparseWorld ? SPARSE : 0);
+            map.putInt(simulation.mode().ordinal());
+            map.putLong(simulation.ticks());
+            map.putLong(world.random().seed());
+            map.putLong(world.random().state());
+            map.putInt(names.length);
+            map.putInt(n);
+            map.putLong(HEADER_SIZE);
+            map.putLong(columnsOffset);
+
+            map.position(HEADER_SIZE);
+            for (int i = 0; i < names.length; i++) {
+                map.putInt(colorCode(species.get(i).getColor()));
+                map.putInt(names[i].length);
+                map.put(names[i]);
+            }
+
+            map.position((int) columnsOffset);
+            map.asLongBuffer().put(randoms);
+            map.position(map.position() + 8 * n);
+            map.asIntBuffer().put(xs);
+            map.position(map.position() + 4 * n);
+            map.asIntBuffer().put(ys);
+            map.position(map.position() + 4 * n);
+            map.asIntBuffer().put(counters);
+            map.position(map.position() + 4 * n);
+            map.asIntBuffer().put(order);
+            map.position(map.position() + 4 * n);
+            map.asShortBuffer().put(speciesIndexes);
+            map.position(map.position() + 2 * n);
+            map.put(dirs);
+            map.force();
+        }
+    }
+
+    /**
+     * Restore a simulation saved to a file. Each saved species is found among
+     * the given species by its name and color, which should be loaded from
+     * the same species files with the same colors as those of the saved
+     * simulation. Two species of the same name and color cannot be told
+     * apart, so they are rejected rather than merged. The restored world has
+     * no listener.
+     *
+     * @param file The file to read.
+     * @param species The species to find the saved species among.
+     * @return The restored simulation.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     * @throws IllegalArgumentException If a saved species is not given, or
+     *         cannot be told apart from another.
+     */
+    public static Simulation restore(Path file, Collection<Species> species) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("not a checkpoint file: " + file);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.nativeOrder());
+            int magic = map.getInt();
+            if (magic == Integer.reverseBytes(MAGIC)) {
+                // written on a machine of the other byte order
+                map.order(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN
+                    ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            } else if (magic != MAGIC) {
+                throw new IOException("not a checkpoint file: " + file);
+            }
+            int version = map.getInt();
+            if (version != VERSION) {
+                throw new IOException("unknown checkpoint version " + version);
+            }
+            int width = map.getInt();
+            int height = map.getInt();
+            int flags = map.getInt();
+            Simulation.Mode mode = MODES[map.getInt()];
+            long ticks = map.getLong();
+            long seed = map.getLong();
+            long randomState = map.getLong();
+            Species[] saved = new Species[map.getInt()];
+            int n = map.getInt();
+            int speciesOffset = (int) map.getLong();
+            int columnsOffset = (int) map.getLong();
+            if (columnsOffset + (long) n * (8 + 4 * 4 + 2 + 1) > size) {
+                throw new IOException("checkpoint is truncated: " + file);
+            }
+
+            map.position(speciesOffset);
+            IdentityHashMap<Species, Boolean> found = new IdentityHashMap<>();
+            for (int i = 0; i < saved.length; i++) {
+                int color = map.getInt();
+                byte[] name = new byte[map.getInt()];
+                map.get(name);
+                saved[i] = find(species, new String(name, StandardCharsets.UTF_8), color);
+                if (found.put(saved[i], true) != null) {
+                    throw new IllegalArgumentException("saved species cannot be told apart: "
+                        + saved[i].getName());
+                }
+            }
+
+            long[] randoms = new long[n];
+            int[] xs = new int[n];
+            int[] ys = new int[n];
+            int[] counters = new int[n];
+            int[] order = new int[n];
+            short[] speciesIndexes = new short[n];
+            byte[] dirs = new byte[n];
+            map.position(columnsOffset);
+            map.asLongBuffer().get(randoms);
+            map.position(map.position() + 8 * n);
+            map.asIntBuffer().get(xs);
+            map.position(map.position() + 4 * n);
+            map.asIntBuffer().get(ys);
+            map.position(map.position() + 4 * n);
+            map.asIntBuffer().get(counters);
+            map.position(map.position() + 4 * n);
+            map.asIntBuffer().get(order);
+            map.position(map.position() + 4 * n);
+            map.asShortBuffer().get(speciesIndexes);
+            map.position(map.position() + 2 * n);
+            map.get(dirs);
+
+            World world = (flags & SPARSE) != 0
+                ? new SparseWorld(width, height, seed) : new World(width, height, seed);
+            Simulation simulation = new Simulation(world, mode);
+            for (int i = 0; i < n; i++) {
+                Creature creature = simulation.add(saved[speciesIndexes[i]], xs[i], ys[i],
+                    DIRECTIONS[dirs[i]]);
+                creature.setCounter(counters[i]);
+                creature.setRandomState(randoms[i]);
+            }
+            world.random().setState(randomState);
+            simulation.restore(ticks, order);
+            return simulation;
+        }
+    }
+
+    // the one species of the given name and color code
+    private static Species find(Collection<Species> species, String name, int color) {
+        Species match = null;
+        for (Species s : species) {
+            if (s.getName().equals(name) && colorCode(s.getColor()) == color) {
+                if (match != null) {
+                    throw new IllegalArgumentException(
+                        "species given twice with the same name and color: " + name);
+                }
+                match = s;
+            }
+        }
+        if (match == null) {
+            throw new IllegalArgumentException("species not given: " + name
+                + (color == 0 ? " without a color" : String.format(" of color #%06X", color - 1)));
+        }
+        return match;
+    }
+
+    // a color as saved: its RGB plus one, or 0 for none
+    private static int colorCode(Color color) {
+        return color == null ? 0 : (color.getRGB() & 0xFFFFFF) + 1;
+    }
+
+    // round an offset up to the alignment of the columns
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+}
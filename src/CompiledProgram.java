@@ -0,0 +1,220 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents a species program compiled into the compact form used
+ * by the simulation. Opcodes are stored as bytes in a primitive array, and the
+ * label of every jump (and labelled infect) is resolved to an instruction
+ * address once, when the program is loaded. Running a program therefore never
+ * has to search for a label or compare strings.
+ */
+public class CompiledProgram {
+
+    /*
+     * Opcode values stored in the opcode array. These match the declaration
+     * order of the Opcode enum, so that an opcode's value is its ordinal.
+     */
+    public static final byte HOP = 0;
+    public static final byte LEFT = 1;
+    public static final byte RIGHT = 2;
+    public static final byte INFECT = 3;
+    public static final byte IFEMPTY = 4;
+    public static final byte IFWALL = 5;
+    public static final byte IFSAME = 6;
+    public static final byte IFENEMY = 7;
+    public static final byte IFRANDOM = 8;
+    public static final byte GO = 9;
+    public static final byte LABEL = 10;
+
+    /**
+     * A superinstruction made by ProgramOptimizer from the sequence
+     * 'ifenemy X / ifwall Y / ifsame Y / hop'. Its target is X, its alternate
+     * target is Y, and its next address is the one after the hop.
+     */
+    public static final byte SENSE_HOP = 11;
+
+    /**
+     * The target of an instruction that does not jump anywhere.
+     */
+    public static final int NO_TARGET = -1;
+
+    // the source instructions, kept for display and debugging
+    private final List<Instruction> instructions;
+
+    // the opcode of each instruction address
+    private final byte[] opcodes;
+
+    // the resolved jump target of each instruction address, or NO_TARGET
+    private final int[] targets;
+
+    // the second jump target of each superinstruction, or NO_TARGET
+    private final int[] alternates;
+
+    // the address to continue from after each instruction falls through
+    private final int[] next;
+
+    // the address of each label
+    private final Map<String, Integer> labels;
+
+    /**
+     * Compile the given list of instructions. Throws a BadSpeciesException if an
+     * instruction refers to a label that is not defined in the program.
+     *
+     * @param instructions The parsed instructions of a species program.
+     */
+    public CompiledProgram(List<Instruction> instructions) {
+        int size = instructions.size();
+        this.instructions = instructions;
+        this.opcodes = new byte[size];
+        this.targets = new int[size];
+        this.alternates = new int[size];
+        this.next = new int[size];
+        this.labels = new HashMap<>();
+
+        // the first definition of a label wins, as it always has
+        for (int i = 0; i < size; i++) {
+            Instruction instruction = instructions.get(i);
+            if (instruction.getOpcode() == Opcode.LABEL) {
+                labels.putIfAbsent(instruction.getLabel(), i);
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            Instruction instruction = instructions.get(i);
+            Opcode opcode = instruction.getOpcode();
+            opcodes[i] = (byte) opcode.ordinal();
+            alternates[i] = NO_TARGET;
+            next[i] = i + 1;
+
+            if (opcode == Opcode.LABEL) {
+                targets[i] = NO_TARGET;
+            } else if (opcode == Opcode.INFECT && instruction.getLabel() == null) {
+                // an infected creature without a label restarts its program
+                targets[i] = 0;
+            } else if (opcode.acceptsLabel()) {
+                Integer address = labels.get(instruction.getLabel());
+                if (address == null) {
+                    throw new Species.BadSpeciesException(
+                        "undefined label '" + instruction.getLabel() + "' at address " + i);
+                }
+                targets[i] = address;
+            } else {
+                targets[i] = NO_TARGET;
+            }
+        }
+    }
+
+    /**
+     * Create a compiled program from arrays that are already filled in. The
+     * arrays become part of the program and must not be changed afterwards.
+     */
+    CompiledProgram(List<Instruction> instructions, Map<String, Integer> labels,
+            byte[] opcodes, int[] targets, int[] alternates, int[] next) {
+        this.instructions = instructions;
+        this.labels = labels;
+        this.opcodes = opcodes;
+        this.targets = targets;
+        this.alternates = alternates;
+        this.next = next;
+    }
+
+    /**
+     * Get the number of instructions in the program.
+     *
+     * @return The program size.
+     */
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * Get the opcode value of the instruction at the given address.
+     *
+     * @param address The instruction address.
+     * @return One of the opcode constants of this class.
+     */
+    public byte opcode(int address) {
+        return opcodes[address];
+    }
+
+    /**
+     * Get the resolved jump target of the instruction at the given address.
+     *
+     * @param address The instruction address.
+     * @return The target address, or NO_TARGET.
+     */
+    public int target(int address) {
+        return targets[address];
+    }
+
+    /**
+     * Get the second jump target of the superinstruction at the given address.
+     *
+     * @param address The instruction address.
+     * @return The alternate target address, or NO_TARGET.
+     */
+    public int alternate(int address) {
+        return alternates[address];
+    }
+
+    /**
+     * Get the address to continue from after the instruction at the given
+     * address falls through (or, for a terminating instruction, where the
+     * creature's next turn starts). Before optimization this is always the
+     * following address.
+     *
+     * @param address The instruction address.
+     * @return The next address.
+     */
+    public int next(int address) {
+        return next[address];
+    }
+
+    /**
+     * Get the address of the given label.
+     *
+     * @param label The name of the label to lookup.
+     * @return The instruction address of the label, or -1 if there is none.
+     */
+    public int labelAddress(String label) {
+        Integer address = labels.get(label);
+        return address == null ? -1 : address;
+    }
+
+    /**
+     * Get the source instruction at the given address.
+     *
+     * @param address The instruction address.
+     * @return The instruction.
+     */
+    public Instruction instruction(int address) {
+        return instructions.get(address);
+    }
+
+    // copies of the arrays, for ProgramOptimizer
+    byte[] opcodes() {
+        return opcodes.clone();
+    }
+
+    int[] targets() {
+        return targets.clone();
+    }
+
+    int[] alternates() {
+        return alternates.clone();
+    }
+
+    int[] nexts() {
+        return next.clone();
+    }
+
+    List<Instruction> instructions() {
+        return instructions;
+    }
+
+    Map<String, Integer> labels() {
+        return labels;
+    }
+
+}
@@ -1,12 +1,10 @@
-import java.util.Random;
-
 /**
  * This class represents one creature in a Darwin simulation. Each creature is
  * of a particular species and has a position and direction within the
  * simulation world. In addition, each creature must remember its current
  * position within its species program, which tells it which instruction to
- * execute next. Lastly, creatures are responsible for drawing themselves in the
- * graphical world map and updating the map appropriately as actions are taken.
+ * execute next. Lastly, creatures report every action they take to their
+ * world's SimulationListener, which may draw them in the graphical world map.
  * @author Diego Torres-Ramos
  */
 
@@ -14,20 +12,42 @@ public class Creature {
 
     Species species;
     World world;
-    Position pos;
+    int x, y;
     Direction dir;
     private int counter = 0;
 
+    // the state of the creature's own random stream
+    private long random;
+
+    // the id of the creature's species in its world's sensing grid, set by
+    // the world whenever it writes the creature's square
+    short speciesId;
+
+    // the direction the world's listener last saw the creature face, which
+    // differs from dir after a taken ifwall or ifsame until perform reports it
+    private Direction reported;
+
     /**
      * Create a creature of the given species, within the given world, with the
      * indicated starting position and direction.
      */
     public Creature(Species species, World world, Position pos, Direction dir) {
+        this(species, world, pos.getX(), pos.getY(), dir);
+    }
+
+    /**
+     * Create a creature of the given species, within the given world, at the
+     * given coordinates and facing the indicated direction.
+     */
+    public Creature(Species species, World world, int x, int y, Direction dir) {
         this.species = species;
         this.world = world;
-        this.pos = pos;
+        this.x = x;
+        this.y = y;
         this.dir = dir;
-        WorldMap.drawCreature(this);
+        this.reported = dir;
+        this.random = world.random().nextLong();
+        world.listener().creatureAdded(this);
     }
 
     /**
@@ -54,7 +74,40 @@ public class Creature {
      * @return The current creature position.
      */
     public Position position() {
-        return pos;
+        return new Position(x, y);
+    }
+
+    /**
+     * Get the current x coordinate of the creature.
+     *
+     * @return The current x coordinate.
+     */
+    public int x() {
+        return x;
+    }
+
+    /**
+     * Get the current y coordinate of the creature.
+     *
+     * @return The current y coordinate.
+     */
+    public int y() {
+        return y;
+    }
+
+    /*
+     * The action a creature takes at the end of its turn, as returned by
+     * decide: one of the ACT_ kinds in the low two bits and, for infect, the
+     * address the victim continues from in the bits above.
+     */
+    static final int ACT_HOP = 0;
+    static final int ACT_LEFT = 1;
+    static final int ACT_RIGHT = 2;
+    static final int ACT_INFECT = 3;
+
+    // the action of an infect whose victim continues from the given address
+    static int infectAction(int address) {
+        return (address << 2) | ACT_INFECT;
     }
 
     /**
@@ -62,131 +115,323 @@ public class Creature {
      * the 'terminating' instructions (hop, left, right, or infect) is executed.
      */
     public void execute() {
+        perform(decide());
+    }
 
-        boolean actionOver = false;
+    /**
+     * Run the creature's program up to its next terminating instruction,
+     * without taking that instruction's action. Sensing, jumps and the turns of
+     * taken ifwall and ifsame instructions happen here; the hop, turn or
+     * infect itself is returned, to be passed to perform.
+     *
+     * @return The encoded action that ends the creature's turn.
+     */
+    int decide() {
 
-        while (!actionOver) {
+        if (ExecutionEngine.current() == ExecutionEngine.JIT) {
+            if (Metrics.ENABLED) {
+                Metrics.turn();
+            }
+            return species.getJitProgram().run(this);
+        }
+
+        CompiledProgram program = species.getCompiledProgram();
+        if (Metrics.ENABLED) {
+            Metrics.interpretedTurn();
+        }
+        ProgramProfile profile = null;
+        if (ProgramProfile.ENABLED) {
+            profile = species.getProfile();
+            profile.countTurn();
+        }
 
-            Instruction instruction = species.programStep(counter);
-            String instructLabel = species.programStep(counter).getLabel();
-            counter++;
-            Position inFront = pos.getAdjacent(dir);
+        while (true) {
 
-            switch (instruction.getOpcode()){
+            int address = counter;
+            counter = program.next(address);
+            byte opcode = program.opcode(address);
+            if (Metrics.ENABLED) {
+                Metrics.instruction(opcode);
+            }
+            if (ProgramProfile.ENABLED) {
+                profile.countExecuted(address);
+            }
 
-                case HOP:
+            switch (opcode){
 
-                    // if the position in front of the current creature is in bounds and
-                    // that position is unoccupied, the creature can hop
+                case CompiledProgram.HOP:
+                    return ACT_HOP;
 
-                    if (world.inBounds(inFront) && world.get(inFront) == null){
+                case CompiledProgram.LEFT:
+                    return ACT_LEFT;
 
-                        world.set(pos, null);
-                        world.set(inFront, this);
+                case CompiledProgram.RIGHT:
+                    return ACT_RIGHT;
 
-                        Position oldPos = pos;
-                        pos = inFront;
+                case CompiledProgram.INFECT:
+                    return infectAction(program.target(address));
 
-                        WorldMap.drawMovedCreature(this, oldPos);
+                case CompiledProgram.IFEMPTY:
+                    if (frontEmpty()){
+                        // continues execution of the program from the address indicated by label
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
                     }
-                    actionOver = true;
                     break;
 
-                case LEFT:
-                    dir = dir.left();
-                    WorldMap.drawCreature(this);
-                    actionOver = true;
+                case CompiledProgram.IFWALL:
+                    if (frontWall()){
+                        dir = dir.left();
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    }
                     break;
 
-                case RIGHT:
-                    dir = dir.right();
-                    WorldMap.drawCreature(this);
-                    actionOver = true;
+                case CompiledProgram.IFSAME:
+                    if (frontSame()){
+                        dir = dir.right();
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    }
                     break;
 
-                case INFECT:
-
-                    // if the space in front is in bounds and has a creature in it,
-                    // infection can happen
-
-                    if (world.inBounds(inFront) && world.get(inFront) != null){
-
-                        Creature frontCreature = world.get(inFront);
-
-                        // makes sure that the creature to infect is not the same species
-
-                        if (frontCreature.species != species){
-                            frontCreature.species = this.species;
+                case CompiledProgram.IFENEMY:
+                    if (frontEnemy()){
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
                         }
+                    }
+                    break;
 
-                        if (instruction.getLabel() == null){
-                            frontCreature.counter = 0;
-                        }else{
-                            frontCreature.counter = species.getLabelAddress(instructLabel);
+                case CompiledProgram.IFRANDOM:
+                    if (randomBranch()){
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
                         }
-                        WorldMap.drawCreature(frontCreature);
                     }
-                    actionOver = true;
                     break;
 
-                case IFEMPTY:
-                    if (world.inBounds(inFront) && world.get(inFront) == null){
-                        // continues execution of the program from the address indicated by label
-                        counter = species.getLabelAddress(instructLabel);
-
+                case CompiledProgram.SENSE_HOP:
+                    // ifenemy X / ifwall Y / ifsame Y / hop, in one step
+                    if (frontEnemy()){
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    } else if (frontWall()){
+                        dir = dir.left();
+                        counter = program.alternate(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTurned(address);
+                        }
+                    } else if (frontSame()){
+                        dir = dir.right();
+                        counter = program.alternate(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTurned(address);
+                        }
+                    } else {
+                        return ACT_HOP;
                     }
+                    break;
 
+                case CompiledProgram.GO:
+                    counter = program.target(address);
                     break;
 
-                case IFWALL:
-                    if (!world.inBounds(inFront)){
-                        dir = dir.left();
-                        counter = species.getLabelAddress(instructLabel);
-                    }
+                case CompiledProgram.LABEL:
                     break;
 
-                case IFSAME:
-                    if (world.get(inFront) == this){
-                        dir = dir.right();
-                        counter = species.getLabelAddress(instructLabel);
-                    }
+                default:
                     break;
+            }
 
-                case IFENEMY:
-                    if (world.inBounds(inFront)){
-                        Creature frontCreature2 = world.get(inFront);
+        }
+    }
 
-                        if (frontCreature2 != null && this.species != frontCreature2.species){
-                            counter = species.getLabelAddress(instructLabel);
-                        }
-                    }
+    /**
+     * Take an action returned by decide, after reporting any turn decide made.
+     *
+     * @param action The encoded action.
+     */
+    void perform(int action) {
+        reportTurn();
+        switch (action & 3) {
+            case ACT_HOP:
+                hop();
+                break;
+            case ACT_LEFT:
+                turnLeft();
+                break;
+            case ACT_RIGHT:
+                turnRight();
+                break;
+            default:
+                infect(action >>> 2);
+                break;
+        }
+    }
 
-                    break;
+    // the x coordinate of the square an action changes
+    int actionX(int action) {
+        int kind = action & 3;
+        return kind == ACT_LEFT || kind == ACT_RIGHT ? x : x + dir.dx();
+    }
 
-                case IFRANDOM:
-                    Random rand = new Random();
+    // the y coordinate of the square an action changes
+    int actionY(int action) {
+        int kind = action & 3;
+        return kind == ACT_LEFT || kind == ACT_RIGHT ? y : y + dir.dy();
+    }
 
-                    // gets a random integer, either 0 or 1
-                    int helperCount = rand.nextInt(2);
+    /*
+     * The operations below are the building blocks of every instruction. Both
+     * the interpreter above and the generated code of SpeciesJit are made of
+     * them, so the two engines always behave the same way.
+     */
 
-                    if (helperCount == 0){
-                        counter = species.getLabelAddress(instructLabel);
-                    }
+    // set the address of the next instruction to execute
+    void setCounter(int address) {
+        counter = address;
+    }
 
-                    break;
+    // get the address of the next instruction to execute
+    int getCounter() {
+        return counter;
+    }
 
-                case GO:
-                    counter = species.getLabelAddress(instruction.getLabel());
-                    break;
+    // get the state of the creature's own random stream
+    long randomState() {
+        return random;
+    }
 
-                case LABEL:
-                    break;
+    // set the state of the creature's own random stream
+    void setRandomState(long state) {
+        random = state;
+    }
 
-                default:
-                    break;
+    // whether the square in front is in bounds and unoccupied
+    boolean frontEmpty() {
+        return world.squareAt(x + dir.dx(), y + dir.dy()) == World.EMPTY;
+    }
+
+    // whether the square in front is outside of the world
+    boolean frontWall() {
+        return world.squareAt(x + dir.dx(), y + dir.dy()) == World.WALL;
+    }
+
+    // whether the square in front holds this creature
+    boolean frontSame() {
+        return world.get(x + dir.dx(), y + dir.dy()) == this;
+    }
+
+    // whether the square in front holds a creature of another species
+    boolean frontEnemy() {
+        short frontSpecies = world.squareAt(x + dir.dx(), y + dir.dy());
+        return frontSpecies > World.EMPTY && frontSpecies != speciesId;
+    }
+
+    // whether an ifrandom instruction takes its jump
+    boolean randomBranch() {
+        // flips a coin from the creature's own stream
+        random = WorldRandom.advance(random);
+        return WorldRandom.heads(random);
+    }
+
+    /*
+     * Report the turns of taken ifwall and ifsame instructions since the
+     * creature last reported its direction, so that the listener knows which
+     * way it faces before it hops. A ticker that takes an action without
+     * perform calls this first.
+     */
+    void reportTurn() {
+        if (dir != reported) {
+            reported = dir;
+            world.listener().creatureTurned(this);
+        }
+    }
+
+    // turn left without reporting it yet, as a taken ifwall does
+    void faceLeft() {
+        dir = dir.left();
+    }
+
+    // turn right without reporting it yet, as a taken ifsame does
+    void faceRight() {
+        dir = dir.right();
+    }
+
+    // move forward one square if that square is in bounds and unoccupied
+    void hop() {
+        if (frontEmpty()){
+
+            int frontX = x + dir.dx();
+            int frontY = y + dir.dy();
+            world.move(x, y, frontX, frontY);
+
+            int oldX = x;
+            int oldY = y;
+            x = frontX;
+            y = frontY;
+
+            world.listener().creatureMoved(this, oldX, oldY);
+            if (Metrics.ENABLED) {
+                Metrics.hop();
             }
+        }
+    }
+
+    // turn left and report it
+    void turnLeft() {
+        dir = dir.left();
+        reported = dir;
+        world.listener().creatureTurned(this);
+    }
+
+    // turn right and report it
+    void turnRight() {
+        dir = dir.right();
+        reported = dir;
+        world.listener().creatureTurned(this);
+    }
+
+    // infect the creature in front, which continues from the given address
+    void infect(int address) {
+        int frontX = x + dir.dx();
+        int frontY = y + dir.dy();
+
+        // if the space in front is in bounds and has a creature in it,
+        // infection can happen
 
+        if (world.squareAt(frontX, frontY) > World.EMPTY){
+            world.get(frontX, frontY).infectedBy(species, address);
         }
     }
 
+    // become infected with the given species, continuing from the given address
+    void infectedBy(Species infector, int address) {
+
+        // makes sure that the creature to infect is not the same species
+
+        if (species != infector){
+            species = infector;
+            world.speciesChanged(x, y);
+            if (Metrics.ENABLED) {
+                Metrics.infection();
+            }
+        }
+
+        // the target of an unlabelled infect is address 0
+        counter = address;
+        world.listener().creatureInfected(this);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,585 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class represents a whole population of creatures, and the world they
+ * live in, as parallel primitive arrays indexed by creature id. It runs the
+ * same instructions as Creature, but keeps no object per creature: a
+ * creature's position, direction, program counter and species are entries in
+ * int and byte arrays, and each square of the world holds the id of its
+ * occupant. This makes very large populations cheap to store and fast to step.
+ *
+ * The data-oriented mode does not draw anything, and is meant for headless
+ * simulations.
+ *
+ * A population can be forked into any number of copies that carry on
+ * separately, for example each with its own seed or with one species's
+ * program replaced, to see how a match might go. Forking is cheap: the board
+ * is kept in rows, which a fork shares with its parent until either of them
+ * first changes one, so rows that no creature moves in are never copied; the
+ * creatures themselves are a few primitive arrays, copied at once. Each fork
+ * may then run on its own thread.
+ */
+public class CreatureArrays {
+
+    // the value of a world square without a creature
+    private static final int EMPTY = -1;
+
+    // how far each direction moves, and where it turns to, by ordinal
+    private static final int[] DX = new int[4];
+    private static final int[] DY = new int[4];
+    private static final byte[] LEFT = new byte[4];
+    private static final byte[] RIGHT = new byte[4];
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    static {
+        for (Direction d : DIRECTIONS) {
+            DX[d.ordinal()] = d.dx();
+            DY[d.ordinal()] = d.dy();
+            LEFT[d.ordinal()] = (byte) d.left().ordinal();
+            RIGHT[d.ordinal()] = (byte) d.right().ordinal();
+        }
+    }
+
+    // size of the world
+    private final int width, height;
+
+    // the id of the creature at each square, by row and column, or EMPTY;
+    // and whether each row is this world's own, or may be shared with forks
+    private final int[][] rows;
+    private final boolean[] rowOwned;
+
+    // the state of each creature, by id
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private byte[] dirs = new byte[16];
+    private int[] counters = new int[16];
+    private int[] speciesIds = new int[16];
+    private long[] randoms = new long[16];
+    private int count = 0;
+
+    // the species of each species id, and their compiled programs
+    private final ArrayList<Species> species;
+    private CompiledProgram[] programs = new CompiledProgram[0];
+
+    // the turn order of the current tick
+    private int[] order = new int[16];
+
+    // the source of all randomness in this world
+    private final WorldRandom rand;
+
+    // the creatures of each species in this world for the Metrics, or null
+    // if they are not counted
+    private final Metrics.Population counted = Metrics.ENABLED ? Metrics.population(this) : null;
+
+    /**
+     * Create a new world of width columns and height rows, with no creatures.
+     *
+     * @param width The width of the world.
+     * @param height The height of the world.
+     */
+    public CreatureArrays(int width, int height) {
+        this(width, height, new WorldRandom().seed());
+    }
+
+    /**
+     * Create a new world of width columns and height rows, with no creatures,
+     * whose randomness comes from a generator with the given seed. Populated
+     * and run in the same way, it behaves exactly like a World with the same
+     * seed.
+     *
+     * @param width The width of the world.
+     * @param height The height of the world.
+     * @param seed The seed of the world's random generator.
+     */
+    public CreatureArrays(int width, int height, long seed) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width and height must be >0");
+        }
+        this.width = width;
+        this.height = height;
+        this.rows = new int[height][width];
+        this.rowOwned = new boolean[height];
+        for (int[] row : rows) {
+            Arrays.fill(row, EMPTY);
+        }
+        Arrays.fill(rowOwned, true);
+        this.species = new ArrayList<>();
+        this.rand = new WorldRandom(seed);
+    }
+
+    /**
+     * Create a copy of the creatures of a simulation and the world they live
+     * in, which carries on exactly as the simulation would if it were
+     * sequential. The simulation must not be running a tick.
+     *
+     * @param simulation The simulation to copy.
+     */
+    public CreatureArrays(Simulation simulation) {
+        this(simulation.world().width(), simulation.world().height());
+        for (Creature creature : simulation.creatures()) {
+            int id = add(creature.species(), creature.x(), creature.y(), creature.direction());
+            counters[id] = creature.getCounter();
+            randoms[id] = creature.randomState();
+        }
+        System.arraycopy(simulation.turnOrder(), 0, order, 0, count);
+        rand.setState(simulation.world().random().state());
+    }
+
+    // a fork of the given world, sharing its rows
+    private CreatureArrays(CreatureArrays parent, WorldRandom rand) {
+        this.width = parent.width;
+        this.height = parent.height;
+        this.rows = parent.rows.clone();
+        this.rowOwned = new boolean[height];
+        Arrays.fill(parent.rowOwned, false);
+        this.xs = parent.xs.clone();
+        this.ys = parent.ys.clone();
+        this.dirs = parent.dirs.clone();
+        this.counters = parent.counters.clone();
+        this.speciesIds = parent.speciesIds.clone();
+        this.randoms = parent.randoms.clone();
+        this.order = parent.order.clone();
+        this.count = parent.count;
+        this.species = new ArrayList<>(parent.species);
+        this.programs = parent.programs.clone();
+        this.rand = rand;
+        if (Metrics.ENABLED) {
+            for (int i = 0; i < count; i++) {
+                counted.changed(null, species.get(speciesIds[i]));
+            }
+        }
+    }
+
+    /**
+     * Fork this world into a copy that carries on exactly as this world
+     * would, sharing the rows of the board with it until either of them
+     * changes one. This must not be called while this world is running a
+     * tick; afterwards, the two may run on different threads.
+     *
+     * @return The copy.
+     */
+    public CreatureArrays fork() {
+        WorldRandom copy = new WorldRandom(rand.seed());
+        copy.setState(rand.state());
+        return new CreatureArrays(this, copy);
+    }
+
+    /**
+     * Fork this world into a copy whose randomness comes from a generator
+     * with the given seed, so that it carries on differently. The copy shares
+     * the rows of the board with this world until either of them changes one.
+     * This must not be called while this world is running a tick.
+     *
+     * @param seed The seed of the copy's random generator.
+     * @return The copy.
+     */
+    public CreatureArrays fork(long seed) {
+        return new CreatureArrays(this, new WorldRandom(seed));
+    }
+
+    /**
+     * Replace one species with another, whose creatures start their new
+     * program from the beginning. This is meant for forks that try out a
+     * changed program.
+     *
+     * @param old The species to replace.
+     * @param replacement The species to replace it with, which must not
+     *          already be in the world.
+     */
+    public void replaceSpecies(Species old, Species replacement) {
+        int id = species.indexOf(old);
+        if (id < 0) {
+            throw new IllegalArgumentException("species not in the world: " + old.getName());
+        } else if (species.contains(replacement)) {
+            throw new IllegalArgumentException("species already in the world: "
+                + replacement.getName());
+        }
+        species.set(id, replacement);
+        programs[id] = replacement.getCompiledProgram();
+        for (int i = 0; i < count; i++) {
+            if (speciesIds[i] == id) {
+                counters[i] = 0;
+                if (Metrics.ENABLED) {
+                    counted.changed(old, replacement);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the random generator of the world.
+     *
+     * @return The world's random generator.
+     */
+    public WorldRandom random() {
+        return rand;
+    }
+
+    /**
+     * Get the width of the world.
+     *
+     * @return The world width.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Get the height of the world.
+     *
+     * @return The world height.
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Get the number of creatures.
+     *
+     * @return The number of creatures.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Add a creature of the given species at the given square, which must be in
+     * bounds and unoccupied.
+     *
+     * @param s The species of the creature.
+     * @param x The x coordinate of the creature.
+     * @param y The y coordinate of the creature.
+     * @param dir The direction the creature faces.
+     * @return The id of the new creature.
+     */
+    public int add(Species s, int x, int y, Direction dir) {
+        if (!inBounds(x, y)) {
+            throw new IllegalArgumentException("bad position: " + new Position(x, y));
+        } else if (rows[y][x] != EMPTY) {
+            throw new IllegalArgumentException("occupied position: " + new Position(x, y));
+        }
+        if (count == xs.length) {
+            int capacity = count * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            dirs = Arrays.copyOf(dirs, capacity);
+            counters = Arrays.copyOf(counters, capacity);
+            speciesIds = Arrays.copyOf(speciesIds, capacity);
+            randoms = Arrays.copyOf(randoms, capacity);
+            order = Arrays.copyOf(order, capacity);
+        }
+        int id = count++;
+        xs[id] = x;
+        ys[id] = y;
+        dirs[id] = (byte) dir.ordinal();
+        counters[id] = 0;
+        speciesIds[id] = speciesId(s);
+        randoms[id] = rand.nextLong();
+        order[id] = id;
+        writableRow(y)[x] = id;
+        if (Metrics.ENABLED) {
+            counted.changed(null, s);
+        }
+        return id;
+    }
+
+    /**
+     * Get the x coordinate of a creature.
+     *
+     * @param id The creature id.
+     * @return The x coordinate.
+     */
+    public int x(int id) {
+        return xs[id];
+    }
+
+    /**
+     * Get the y coordinate of a creature.
+     *
+     * @param id The creature id.
+     * @return The y coordinate.
+     */
+    public int y(int id) {
+        return ys[id];
+    }
+
+    /**
+     * Get the direction of a creature.
+     *
+     * @param id The creature id.
+     * @return The direction.
+     */
+    public Direction direction(int id) {
+        return DIRECTIONS[dirs[id]];
+    }
+
+    /**
+     * Get the species of a creature.
+     *
+     * @param id The creature id.
+     * @return The species.
+     */
+    public Species species(int id) {
+        return species.get(speciesIds[id]);
+    }
+
+    /**
+     * Get the address of the next instruction a creature will execute.
+     *
+     * @param id The creature id.
+     * @return The program counter.
+     */
+    public int counter(int id) {
+        return counters[id];
+    }
+
+    /**
+     * Get the id of the creature at the given square.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The creature id, or -1 if the square is empty.
+     */
+    public int creatureAt(int x, int y) {
+        if (!inBounds(x, y)) {
+            throw new IllegalArgumentException("bad position: " + new Position(x, y));
+        }
+        return rows[y][x];
+    }
+
+    /**
+     * Stop counting the creatures of this world in the population of the
+     * Metrics, once it has finished running. A world dropped without this
+     * stops being counted once it is garbage collected.
+     */
+    public void finish() {
+        if (Metrics.ENABLED) {
+            Metrics.release(counted);
+        }
+    }
+
+    /**
+     * Count the creatures of the given species.
+     *
+     * @param s The species to count.
+     * @return The number of creatures of that species.
+     */
+    public int population(Species s) {
+        int id = species.indexOf(s);
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            if (speciesIds[i] == id) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Give every creature one turn, in a freshly shuffled order.
+     */
+    public void tick() {
+        rand.shuffle(order, count);
+        for (int i = 0; i < count; i++) {
+            execute(order[i]);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.tick();
+        }
+    }
+
+    /**
+     * Repeatedly execute instructions from the program of the given creature
+     * until one of the 'terminating' instructions (hop, left, right, or infect)
+     * is executed. This follows Creature.execute exactly.
+     *
+     * @param id The creature id.
+     */
+    public void execute(int id) {
+        CompiledProgram program = programs[speciesIds[id]];
+        int counter = counters[id];
+        if (Metrics.ENABLED) {
+            Metrics.interpretedTurn();
+        }
+        ProgramProfile profile = null;
+        if (ProgramProfile.ENABLED) {
+            profile = species.get(speciesIds[id]).getProfile();
+            profile.countTurn();
+        }
+
+        while (true) {
+
+            int address = counter;
+            counter = program.next(address);
+            byte opcode = program.opcode(address);
+            if (Metrics.ENABLED) {
+                Metrics.instruction(opcode);
+            }
+            if (ProgramProfile.ENABLED) {
+                profile.countExecuted(address);
+            }
+            int d = dirs[id];
+            int frontX = xs[id] + DX[d];
+            int frontY = ys[id] + DY[d];
+            boolean inBounds = inBounds(frontX, frontY);
+            int front = inBounds ? rows[frontY][frontX] : EMPTY;
+
+            switch (opcode) {
+
+                case CompiledProgram.HOP:
+                    if (inBounds && front == EMPTY) {
+                        hop(id, frontX, frontY);
+                    }
+                    counters[id] = counter;
+                    return;
+
+                case CompiledProgram.LEFT:
+                    dirs[id] = LEFT[d];
+                    counters[id] = counter;
+                    return;
+
+                case CompiledProgram.RIGHT:
+                    dirs[id] = RIGHT[d];
+                    counters[id] = counter;
+                    return;
+
+                case CompiledProgram.INFECT:
+                    counters[id] = counter;
+                    if (front != EMPTY) {
+                        if (Metrics.ENABLED && speciesIds[front] != speciesIds[id]) {
+                            Metrics.infection();
+                            counted.changed(species.get(speciesIds[front]),
+                                species.get(speciesIds[id]));
+                        }
+                        speciesIds[front] = speciesIds[id];
+                        counters[front] = program.target(address);
+                    }
+                    return;
+
+                case CompiledProgram.IFEMPTY:
+                    if (inBounds && front == EMPTY) {
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    }
+                    break;
+
+                case CompiledProgram.IFWALL:
+                    if (!inBounds) {
+                        dirs[id] = LEFT[d];
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    }
+                    break;
+
+                case CompiledProgram.IFSAME:
+                    if (!inBounds) {
+                        throw new IllegalArgumentException(
+                            "bad position: " + new Position(frontX, frontY));
+                    } else if (front == id) {
+                        dirs[id] = RIGHT[d];
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    }
+                    break;
+
+                case CompiledProgram.IFENEMY:
+                    if (front != EMPTY && speciesIds[front] != speciesIds[id]) {
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    }
+                    break;
+
+                case CompiledProgram.IFRANDOM:
+                    randoms[id] = WorldRandom.advance(randoms[id]);
+                    if (WorldRandom.heads(randoms[id])) {
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    }
+                    break;
+
+                case CompiledProgram.SENSE_HOP:
+                    if (front != EMPTY && speciesIds[front] != speciesIds[id]) {
+                        counter = program.target(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTaken(address);
+                        }
+                    } else if (!inBounds) {
+                        dirs[id] = LEFT[d];
+                        counter = program.alternate(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTurned(address);
+                        }
+                    } else if (front == id) {
+                        dirs[id] = RIGHT[d];
+                        counter = program.alternate(address);
+                        if (ProgramProfile.ENABLED) {
+                            profile.countTurned(address);
+                        }
+                    } else {
+                        if (front == EMPTY) {
+                            hop(id, frontX, frontY);
+                        }
+                        counters[id] = counter;
+                        return;
+                    }
+                    break;
+
+                case CompiledProgram.GO:
+                    counter = program.target(address);
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    // move a creature to the empty square in front of it
+    private void hop(int id, int frontX, int frontY) {
+        writableRow(ys[id])[xs[id]] = EMPTY;
+        writableRow(frontY)[frontX] = id;
+        xs[id] = frontX;
+        ys[id] = frontY;
+        if (Metrics.ENABLED) {
+            Metrics.hop();
+        }
+    }
+
+    // a row that this world may change, copying it first if it may be shared
+    private int[] writableRow(int y) {
+        if (!rowOwned[y]) {
+            rows[y] = rows[y].clone();
+            rowOwned[y] = true;
+        }
+        return rows[y];
+    }
+
+    // whether the given square is within the world
+    private boolean inBounds(int x, int y) {
+        return 0 <= x && x < width && 0 <= y && y < height;
+    }
+
+    // get the id of a species, registering it the first time it is seen
+    private int speciesId(Species s) {
+        int id = species.indexOf(s);
+        if (id < 0) {
+            id = species.size();
+            species.add(s);
+            programs = Arrays.copyOf(programs, id + 1);
+            programs[id] = s.getCompiledProgram();
+        }
+        return id;
+    }
+
+}
@@ -1,5 +1,3 @@
-import java.util.Random;
-
 /**
  * This class represents a compass direction (north, south, east, or west).
  */
@@ -7,14 +5,13 @@ public enum Direction {
 
     NORTH, SOUTH, EAST, WEST;
 
-    private static final Random rand = new Random();
-
     /**
-     * Get a direction selected uniformly at random.
+     * Get a direction selected uniformly at random by the given generator.
      * 
+     * @param rand The random generator to use.
      * @return A random direction.
      */
-    public static Direction random() {
+    public static Direction random(WorldRandom rand) {
         switch (rand.nextInt(Direction.values().length)) {
             case 0:
                 return NORTH;
@@ -69,4 +66,36 @@ public enum Direction {
         }
     }
 
+    /**
+     * Get how far one step in this direction moves along the x axis.
+     * 
+     * @return The change in x coordinate: -1, 0 or 1.
+     */
+    public int dx() {
+        switch (this) {
+            case EAST:
+                return 1;
+            case WEST:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Get how far one step in this direction moves along the y axis.
+     * 
+     * @return The change in y coordinate: -1, 0 or 1.
+     */
+    public int dy() {
+        switch (this) {
+            case NORTH:
+                return -1;
+            case SOUTH:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
 }
@@ -1,8 +1,11 @@
 import java.awt.Color;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Scanner;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This class runs a bug fight simulation.
@@ -17,52 +20,172 @@ public class Driver {
 
     public static int NUM_CREATURES = 10;
 
-    public static void main(String[] args) {
+    // the pace of the simulation at normal speed
+    private static final double TICKS_PER_SECOND = 10;
 
-        // create the world (15 x 15 grid)
-        WorldMap.initialize(15, 15);
-        World worldForCreatures = new World(15, 15);
+    // reads every answer to the prompts; one scanner, so that answers piped
+    // in ahead of time are not lost to another scanner's buffer
+    private static final Scanner userInput = new Scanner(System.in);
+
+    public static void main(String[] args) throws IOException {
+
+        // with -Dbugfight.replay=<file>, play back a recorded match instead,
+        // from -Dbugfight.start ticks in
+        String replay = System.getProperty("bugfight.replay");
+        if (replay != null) {
+            replay(replay, Long.getLong("bugfight.start", 0));
+            return;
+        }
+
+        // with -Dbugfight.headless=true, there is no window: the simulation
+        // runs for -Dbugfight.ticks ticks as fast as it can, then reports
+        // the population of each species
+        boolean headless = Boolean.getBoolean("bugfight.headless");
+        // with -Dbugfight.checkpoint=<file>, a headless run saves the match
+        // there at the end, and every -Dbugfight.checkpoint.every ticks on
+        // the way
+        String checkpoint = System.getProperty("bugfight.checkpoint");
+        long ticks = Long.getLong("bugfight.ticks", 1000);
+        long every = checkpoint == null ? ticks
+            : Long.getLong("bugfight.checkpoint.every", ticks);
+        if (every <= 0 && ticks > 0) {
+            throw new IllegalArgumentException("bugfight.checkpoint.every must be >0");
+        }
+
+        // create the world (15 x 15 grid, or -Dbugfight.size squares across);
+        // a seed given with -Dbugfight.seed replays an earlier run exactly
+        int size = Integer.getInteger("bugfight.size", 15);
+        long seed = Long.getLong("bugfight.seed", new WorldRandom().seed());
+        System.out.println("Seed: " + seed);
+        if (Metrics.ENABLED) {
+            System.out.println("Metrics: " + Metrics.NAME);
+        }
+        World worldForCreatures = new World(size, size, seed);
+        // with -Dbugfight.restore=<file>, the species answered are those of a
+        // saved match, which carries on instead of starting afresh
+        String restore = System.getProperty("bugfight.restore");
+        // with -Dbugfight.synchronous=true, all creatures decide at once
+        // and then act together
+        Simulation simulation = new Simulation(worldForCreatures,
+            Boolean.getBoolean("bugfight.synchronous")
+                ? Simulation.Mode.SYNCHRONOUS : Simulation.Mode.SEQUENTIAL);
+        // -Dbugfight.creatures sets how many creatures of each species there are
+        int creaturesPerSpecies = Integer.getInteger("bugfight.creatures", NUM_CREATURES);
         // species file
         String file = fileInput();
         // color of the species
         String color = colorInput();
         // color object of the species
         Color colorObj = colorFromString(color);
-        // Arraylist where we'll add the creatures that are created and drawn into the WorldMap
-        ArrayList<Creature> creatureList = new ArrayList<Creature>();
+        // Arraylist of the species taking part, for the final report
+        ArrayList<Species> speciesList = new ArrayList<Species>();
         // this while loop iterates as long as the user doesn't provide a blank response when prompted.
         while (!file.equals("")){
             // create scpecies given the file (to parse through) and color object
             Species newSpecies = new Species(file, colorObj);
-            // use for loop to create creatures and add to arraylist
-            for (int i = 0; i < NUM_CREATURES; i++) {
-                Position startingPosition = worldForCreatures.randomPosition();
-                Direction startingDirection = Direction.random();
-                // create creature
-                Creature newCreature = new Creature(newSpecies, worldForCreatures, startingPosition, startingDirection);
-                // set the creatures on the world
-                worldForCreatures.set(startingPosition, newCreature);
-                // draw the creatures on the worldmap
-                WorldMap.drawCreature(newCreature);
-                // add the creature to the arraylist
-                creatureList.add(newCreature);
-
+            speciesList.add(newSpecies);
+            // use for loop to create creatures and place them on random squares of the world
+            for (int i = 0; restore == null && i < creaturesPerSpecies; i++) {
+                simulation.addAtRandom(newSpecies);
             }
             // prompt user again
             file = fileInput();
             color = colorInput();
             colorObj = colorFromString(color);
         }
-        // infinitely loop through the simulation
-        while (true){
-            // for loop inside while loop to loop through all creatures
-            Collections.shuffle(creatureList);
-            for (Creature newCreature : creatureList){
-                //execute each creatures' instructions
-                newCreature.execute();
-                WorldMap.pause(100);
+        if (restore != null) {
+            simulation = Checkpoint.restore(Paths.get(restore), speciesList);
+            worldForCreatures = simulation.world();
+            System.out.println("Restored at tick " + simulation.ticks());
+        }
+        if (ProgramProfile.ENABLED) {
+            // with -Dbugfight.profile=true, print where each species program
+            // spent its turns on the way out, however the run ends
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (Species species : speciesList) {
+                    System.out.print(species.getName() + ": " + species.getProfile());
+                }
+            }));
+        }
+        if (!headless) {
+            // show the world, and every change to it, on the world map
+            WorldMap.initialize(worldForCreatures);
+            worldForCreatures.setListener(
+                new WorldMapListener(worldForCreatures.width()));
+        }
+        // with -Dbugfight.record=<file>, record the match for replaying
+        String record = System.getProperty("bugfight.record");
+        ReplayRecorder recorder = null;
+        if (record != null) {
+            recorder = new ReplayRecorder(simulation, Paths.get(record));
+            worldForCreatures.setListener(
+                SimulationListener.both(worldForCreatures.listener(), recorder));
+            // closing the window exits, so write the index on the way out
+            ReplayRecorder closing = recorder;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    closing.close();
+                } catch (IOException e) {
+                    System.err.println("Could not finish recording: " + e.getMessage());
+                }
+            }));
+        }
+        if (headless) {
+            for (long done = 0; done < ticks; done += every) {
+                simulation.run(Math.min(every, ticks - done));
+                if (checkpoint != null) {
+                    Checkpoint.save(simulation, Paths.get(checkpoint));
+                }
+            }
+            if (recorder != null) {
+                recorder.close();
+            }
+            for (Species species : speciesList) {
+                System.out.println(species.getName() + ": " + simulation.population(species));
             }
+            simulation.finish();
+            return;
+        }
+        // infinitely loop through the simulation, ten ticks a second times
+        // -Dbugfight.speed, or as fast as possible with -Dbugfight.speed=max
+        TickScheduler scheduler = new TickScheduler(simulation, TICKS_PER_SECOND);
+        String speed = System.getProperty("bugfight.speed", "1");
+        scheduler.setSpeed(speed.equals("max") ? TickScheduler.UNTHROTTLED : Double.parseDouble(speed));
+        scheduler.run(Long.MAX_VALUE);
+    }
+
+    /**
+     * Play back a recorded match in the world map, from the given tick to
+     * the end, at ten ticks a second times -Dbugfight.speed.
+     * @param file the file written by the recording
+     * @param start the tick to start from
+     * @throws IOException if the file cannot be read
+     */
+    private static void replay(String file, long start) throws IOException {
+        try (ReplayPlayer player = new ReplayPlayer(Paths.get(file))) {
+            WorldMap.initialize(player.width(), player.height());
+            FrameRing ring = new FrameRing(64);
+            WorldMap.follow(ring);
+            player.seek(start);
+            show(player, ring);
+            TickScheduler scheduler = new TickScheduler(() -> {
+                try {
+                    player.step();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                show(player, ring);
+            }, TICKS_PER_SECOND);
+            String speed = System.getProperty("bugfight.speed", "1");
+            scheduler.setSpeed(speed.equals("max") ? TickScheduler.UNTHROTTLED : Double.parseDouble(speed));
+            scheduler.run(player.lastTick() - player.tick());
+        }
+    }
 
+    // hand the player's latest changes to the world map, waiting for room
+    private static void show(ReplayPlayer player, FrameRing ring) {
+        while (!ring.offer(player.changes(), player.tick())) {
+            LockSupport.parkNanos(1_000_000);
         }
     }
 
@@ -72,7 +195,6 @@ public class Driver {
      * @return species filename
      */
     public static String fileInput(){
-        Scanner userInput = new Scanner(System.in);
         System.out.print("Enter the species filename: ");
         String response = userInput.nextLine();
         return response;
@@ -84,7 +206,6 @@ public class Driver {
      * @return species color
      */
     public static String colorInput(){
-        Scanner userInput = new Scanner(System.in);
         System.out.print("Enter color of species: ");
         String response = userInput.nextLine();
         return response;
@@ -0,0 +1,63 @@
+/**
+ * This class represents the ways a creature can run its species program. The
+ * interpreter steps through the compiled program one instruction at a time,
+ * while the JIT runs code generated for each species by SpeciesJit. Both
+ * produce exactly the same results.
+ *
+ * The engine is chosen at runtime with the system property bugfight.engine
+ * (for example -Dbugfight.engine=jit), and defaults to the interpreter.
+ */
+public enum ExecutionEngine {
+
+    INTERPRETER, JIT;
+
+    // the engine used by all creatures
+    private static ExecutionEngine current =
+        fromString(System.getProperty("bugfight.engine", "interpreter"));
+
+    /**
+     * Get the engine used to run creature programs.
+     *
+     * @return The current engine.
+     */
+    public static ExecutionEngine current() {
+        return current;
+    }
+
+    /**
+     * Set the engine used to run creature programs. This should be called
+     * before the simulation starts.
+     *
+     * @param engine The engine to use.
+     */
+    public static void setCurrent(ExecutionEngine engine) {
+        if (engine == null) {
+            throw new NullPointerException("missing engine");
+        }
+        current = engine;
+    }
+
+    /**
+     * Convert a string (e.g., 'jit') to its corresponding engine. The given
+     * string is case-insensitive.
+     *
+     * @param str The name of an engine.
+     * @return The corresponding engine.
+     */
+    public static ExecutionEngine fromString(String str) {
+        try {
+            return valueOf(str.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown engine " + str);
+        }
+    }
+
+    /**
+     * Get a string representation of the engine.
+     */
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+
+}
@@ -0,0 +1,229 @@
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class represents a fixed-size ring of frames passed from one producer
+ * thread (the simulation) to one consumer thread (the display), without locks.
+ * A frame lists the squares of the world map that changed, and how each now
+ * looks.
+ *
+ * The producer claims the next free frame, fills it in and publishes it; the
+ * consumer takes published frames in order and releases each one when done.
+ * Frames are reused, so passing them allocates nothing once they have grown
+ * to the size they need. Neither side ever waits for the other: when the ring
+ * is full, claim returns null, and the producer is expected to keep its
+ * changes and publish them, merged with later ones, once there is room.
+ */
+public class FrameRing {
+
+    /**
+     * The squares that changed in one or more ticks of the simulation.
+     */
+    public static class Frame {
+
+        // the tick the frame was published after
+        private long tick;
+
+        // the number of changed squares, and each one's coordinates and looks
+        private int count = 0;
+        private int[] xs = new int[16];
+        private int[] ys = new int[16];
+        private char[] letters = new char[16];
+        private Direction[] dirs = new Direction[16];
+        private Color[] colors = new Color[16];
+
+        /**
+         * Get the number of ticks the simulation had finished when this frame
+         * was published.
+         *
+         * @return The tick.
+         */
+        public long tick() {
+            return tick;
+        }
+
+        /**
+         * Get the number of changed squares.
+         *
+         * @return The number of squares.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Get the x coordinate of a changed square.
+         *
+         * @param i The index of the change, from 0 to size() - 1.
+         * @return The x coordinate.
+         */
+        public int x(int i) {
+            return xs[i];
+        }
+
+        /**
+         * Get the y coordinate of a changed square.
+         *
+         * @param i The index of the change.
+         * @return The y coordinate.
+         */
+        public int y(int i) {
+            return ys[i];
+        }
+
+        /**
+         * Get the letter drawn in a changed square, which is a space if the
+         * square is now empty.
+         *
+         * @param i The index of the change.
+         * @return The letter.
+         */
+        public char letter(int i) {
+            return letters[i];
+        }
+
+        /**
+         * Get the direction of the creature in a changed square.
+         *
+         * @param i The index of the change.
+         * @return The direction, or null if the square is empty.
+         */
+        public Direction direction(int i) {
+            return dirs[i];
+        }
+
+        /**
+         * Get the color of the creature in a changed square.
+         *
+         * @param i The index of the change.
+         * @return The color, or null if the square is empty.
+         */
+        public Color color(int i) {
+            return colors[i];
+        }
+
+        /**
+         * Forget every change, so the frame can be filled in again.
+         */
+        public void clear() {
+            Arrays.fill(dirs, 0, count, null);
+            Arrays.fill(colors, 0, count, null);
+            count = 0;
+        }
+
+        /**
+         * Add a changed square.
+         *
+         * @param x The x coordinate of the square.
+         * @param y The y coordinate of the square.
+         * @param letter The letter drawn in the square, or a space.
+         * @param dir The direction drawn in the square, or null.
+         * @param color The color drawn in the square, or null.
+         */
+        public void add(int x, int y, char letter, Direction dir, Color color) {
+            if (count == xs.length) {
+                int capacity = count * 2;
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                letters = Arrays.copyOf(letters, capacity);
+                dirs = Arrays.copyOf(dirs, capacity);
+                colors = Arrays.copyOf(colors, capacity);
+            }
+            xs[count] = x;
+            ys[count] = y;
+            letters[count] = letter;
+            dirs[count] = dir;
+            colors[count] = color;
+            count++;
+        }
+
+        // change the looks of a square already in the frame
+        void set(int i, char letter, Direction dir, Color color) {
+            letters[i] = letter;
+            dirs[i] = dir;
+            colors[i] = color;
+        }
+
+        // copy the changes of another frame into this one
+        void copy(Frame other, long tick) {
+            clear();
+            for (int i = 0; i < other.count; i++) {
+                add(other.xs[i], other.ys[i], other.letters[i], other.dirs[i], other.colors[i]);
+            }
+            this.tick = tick;
+        }
+    }
+
+    // the frames, used in turn; the length is a power of two
+    private final Frame[] frames;
+    private final int mask;
+
+    // the number of frames ever published, written only by the producer
+    private final AtomicLong published = new AtomicLong();
+
+    // the number of frames ever released, written only by the consumer
+    private final AtomicLong released = new AtomicLong();
+
+    /**
+     * Create a ring holding the given number of frames.
+     *
+     * @param capacity The number of frames, a power of two.
+     */
+    public FrameRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        frames = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Frame();
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Publish a copy of the given changes, if there is room. Called only by
+     * the producer.
+     *
+     * @param changes The changes to publish.
+     * @param tick The number of ticks finished.
+     * @return True if the changes were published, or false if the ring is
+     *         full and the consumer has fallen behind.
+     */
+    public boolean offer(Frame changes, long tick) {
+        long next = published.get();
+        if (next - released.getAcquire() == frames.length) {
+            return false;
+        }
+        frames[(int) next & mask].copy(changes, tick);
+        published.setRelease(next + 1);
+        return true;
+    }
+
+    /**
+     * Get the oldest published frame that has not been released, without
+     * removing it. Called only by the consumer.
+     *
+     * @return The frame, or null if there is none.
+     */
+    public Frame peek() {
+        long next = released.get();
+        if (next == published.getAcquire()) {
+            return null;
+        }
+        return frames[(int) next & mask];
+    }
+
+    /**
+     * Release the frame returned by peek, so the producer can reuse it.
+     * Called only by the consumer.
+     */
+    public void release() {
+        long next = released.get();
+        if (next == published.get()) {
+            throw new IllegalStateException("no frame to release");
+        }
+        released.setRelease(next + 1);
+    }
+
+}
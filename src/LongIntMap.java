@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * This class represents a map from longs to ints, such as from the squares
+ * of a world, each given by its index y * width + x, to what they hold, or
+ * from the coordinates of the tiles of a SparseWorld to where the tiles are
+ * kept. It uses open addressing with linear probing, so that looking up a
+ * key allocates nothing, and its size follows the number of keys in it
+ * rather than the range they come from.
+ *
+ * A LongIntMap is not thread-safe.
+ */
+public class LongIntMap {
+
+    // the smallest number of slots
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * The value get returns for a key that is not in the map.
+     */
+    public static final int ABSENT = Integer.MIN_VALUE;
+
+    // the key and value of each slot, which is empty while its value is
+    // ABSENT; the number of slots is a power of two
+    private long[] keys = new long[MIN_CAPACITY];
+    private int[] values = newValues(MIN_CAPACITY);
+
+    // the number of keys in the map
+    private int size = 0;
+
+    /**
+     * Get the number of keys in the map.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key The key.
+     * @return The value, or ABSENT if the key is not in the map.
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != ABSENT; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Set the value of a key, adding the key if it is not in the map.
+     *
+     * @param key The key.
+     * @param value The value, which is not ABSENT.
+     */
+    public void put(long key, int value) {
+        if (value == ABSENT) {
+            throw new IllegalArgumentException("value cannot be ABSENT");
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != ABSENT && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == ABSENT) {
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Remove a key from the map, if it is there.
+     *
+     * @param key The key.
+     */
+    public void remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != ABSENT && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == ABSENT) {
+            return;
+        }
+        size--;
+
+        // shift later entries of the probe sequence back into the gap
+        int gap = i;
+        for (int j = (gap + 1) & mask; values[j] != ABSENT; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = ABSENT;
+    }
+
+    /**
+     * Remove every key. The room the map grew to is kept for the next keys
+     * if they were many, and given back if they were few, so a map cleared
+     * after every batch of keys follows the size of the batches.
+     */
+    public void clear() {
+        if (keys.length > MIN_CAPACITY && size * 8 < keys.length) {
+            keys = new long[MIN_CAPACITY];
+            values = newValues(MIN_CAPACITY);
+        } else {
+            Arrays.fill(values, ABSENT);
+        }
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = newValues(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != ABSENT) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int[] newValues(int capacity) {
+        int[] values = new int[capacity];
+        Arrays.fill(values, ABSENT);
+        return values;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) WorldRandom.mix64(key) & mask;
+    }
+
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This class represents one headless match between two or more species: a
+ * world of a given size and seed, with the same number of creatures of each
+ * species placed at random, run for a number of ticks or until only one
+ * species is left. A match is run without a display, so many can run at once
+ * on different threads; species may be shared between them.
+ */
+public class Match {
+
+    // the species taking part
+    private final List<Species> species;
+
+    // the seed of the world
+    private final long seed;
+
+    // the width and height of the world, the creatures of each species,
+    // and the most ticks to run
+    private final int size;
+    private final int creaturesPerSpecies;
+    private final long ticks;
+
+    /**
+     * Create a match.
+     *
+     * @param species The species taking part.
+     * @param seed The seed of the world.
+     * @param size The width and height of the world.
+     * @param creaturesPerSpecies The number of creatures of each species.
+     * @param ticks The most ticks to run.
+     */
+    public Match(List<Species> species, long seed, int size, int creaturesPerSpecies,
+            long ticks) {
+        if (new HashSet<>(species).size() != species.size()) {
+            throw new IllegalArgumentException("a species cannot play itself");
+        } else if ((long) species.size() * creaturesPerSpecies > (long) size * size) {
+            throw new IllegalArgumentException("too many creatures for the world");
+        }
+        this.species = new ArrayList<>(species);
+        this.seed = seed;
+        this.size = size;
+        this.creaturesPerSpecies = creaturesPerSpecies;
+        this.ticks = ticks;
+    }
+
+    /**
+     * Get the species taking part.
+     *
+     * @return The species.
+     */
+    public List<Species> species() {
+        return species;
+    }
+
+    /**
+     * Run the match.
+     *
+     * @return The result.
+     */
+    public MatchResult run() {
+        Simulation simulation = new Simulation(new World(size, size, seed));
+        for (Species s : species) {
+            for (int i = 0; i < creaturesPerSpecies; i++) {
+                simulation.addAtRandom(s);
+            }
+        }
+        int[] survivors = new int[species.size()];
+        long tick = 0;
+        while (tick < ticks && count(simulation, survivors) > 1) {
+            simulation.tick();
+            tick++;
+        }
+        count(simulation, survivors);
+        simulation.finish();
+        return new MatchResult(species, survivors, tick, seed);
+    }
+
+    // count the creatures of each species, and return how many species are left
+    private int count(Simulation simulation, int[] survivors) {
+        Arrays.fill(survivors, 0);
+        for (Creature creature : simulation.creatures()) {
+            survivors[species.indexOf(creature.species())]++;
+        }
+        int left = 0;
+        for (int count : survivors) {
+            if (count > 0) {
+                left++;
+            }
+        }
+        return left;
+    }
+
+}
@@ -0,0 +1,111 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents the outcome of one headless match: how many
+ * creatures of each species survived, and after how many ticks. The species
+ * with the most survivors wins; if several share the most, the match is a
+ * draw between them.
+ */
+public class MatchResult {
+
+    // the species of the match, and the survivors of each
+    private final List<Species> species;
+    private final int[] survivors;
+
+    // the number of ticks the match ran
+    private final long ticks;
+
+    // the seed of the match's world
+    private final long seed;
+
+    /**
+     * Create the result of a match.
+     *
+     * @param species The species of the match.
+     * @param survivors The number of creatures of each species at the end.
+     * @param ticks The number of ticks the match ran.
+     * @param seed The seed of the match's world.
+     */
+    public MatchResult(List<Species> species, int[] survivors, long ticks, long seed) {
+        if (species.size() != survivors.length) {
+            throw new IllegalArgumentException("one survivor count per species is needed");
+        }
+        this.species = Collections.unmodifiableList(species);
+        this.survivors = survivors.clone();
+        this.ticks = ticks;
+        this.seed = seed;
+    }
+
+    /**
+     * Get the species of the match.
+     *
+     * @return An unmodifiable list of the species.
+     */
+    public List<Species> species() {
+        return species;
+    }
+
+    /**
+     * Get the number of creatures of a species at the end of the match.
+     *
+     * @param index The index of the species in species().
+     * @return The number of survivors.
+     */
+    public int survivors(int index) {
+        return survivors[index];
+    }
+
+    /**
+     * Get the number of ticks the match ran, which is less than the limit if
+     * only one species was left.
+     *
+     * @return The number of ticks.
+     */
+    public long ticks() {
+        return ticks;
+    }
+
+    /**
+     * Get the seed of the match's world, with which it can be run again.
+     *
+     * @return The seed.
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Get the winner of the match.
+     *
+     * @return The index in species() of the species with the most survivors,
+     *         or -1 if the match is a draw.
+     */
+    public int winner() {
+        int winner = -1;
+        int most = -1;
+        for (int i = 0; i < survivors.length; i++) {
+            if (survivors[i] > most) {
+                winner = i;
+                most = survivors[i];
+            } else if (survivors[i] == most) {
+                winner = -1;
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Get the score of one species against another: 1 if it has more
+     * survivors, 0.5 if they have the same number, and 0 if it has fewer.
+     *
+     * @param index The index of the species in species().
+     * @param other The index of the other species.
+     * @return The score.
+     */
+    public double score(int index, int other) {
+        return survivors[index] > survivors[other] ? 1
+            : survivors[index] == survivors[other] ? 0.5 : 0;
+    }
+
+}
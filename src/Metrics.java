@@ -0,0 +1,279 @@
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class counts what the simulations in this JVM do: ticks, turns, the
+ * instructions the interpreters execute by opcode, hops, infections and the
+ * population of each species. The counters are LongAdders, so the threads of
+ * a parallel tick can count at once without contending, and they are
+ * published through the platform MBean server as a MetricsMXBean.
+ *
+ * The population is counted per world, and only over the worlds still
+ * running: a world stops being counted when its simulation finishes (see
+ * Simulation.finish), or once it is garbage collected, so a tournament
+ * shows the creatures of the matches being played and not of every match
+ * so far.
+ *
+ * Counting is off unless the JVM is started with -Dbugfight.metrics=true.
+ * ENABLED is a constant, so when it is false the JIT compiler removes every
+ * check of it, and the engines run as if this class did not exist. The
+ * generated code of the JIT engine is not instrumented: with it, everything
+ * but the instruction counts is counted.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    /**
+     * Whether counting is on.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("bugfight.metrics");
+
+    /**
+     * The name the metrics are published under.
+     */
+    public static final String NAME = "bugfight:type=Metrics";
+
+    // the shortest time over which rates are measured
+    private static final long RATE_NANOS = 1_000_000_000L;
+
+    // the name of each opcode value of CompiledProgram
+    private static final String[] OPCODE_NAMES = opcodeNames();
+
+    // the only instance, published if counting is on
+    private static final Metrics INSTANCE = new Metrics();
+
+    // stops counting the population of worlds that are garbage collected
+    private static final Cleaner CLEANER = ENABLED ? Cleaner.create() : null;
+
+    // the counters
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder hops = new LongAdder();
+    private final LongAdder infections = new LongAdder();
+    private final LongAdder[] instructions = new LongAdder[OPCODE_NAMES.length];
+
+    // the population of each world still counted
+    private final Set<Population> populations = ConcurrentHashMap.newKeySet();
+
+    // the turns taken by the interpreters, for the steps per turn
+    private final LongAdder interpretedTurns = new LongAdder();
+
+    // the counters at the start of the current rate measurement, and when
+    // it started
+    private long rateStart = System.nanoTime();
+    private long ticksAtStart;
+    private long turnsAtStart;
+    private long instructionsAtStart;
+    private long interpretedTurnsAtStart;
+
+    // the rates last measured
+    private double ticksPerSecond;
+    private double turnsPerSecond;
+    private double stepsPerTurn;
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                    new ObjectName(NAME));
+            } catch (JMException e) {
+                throw new IllegalStateException("cannot publish metrics", e);
+            }
+        }
+    }
+
+    // one instance only
+    private Metrics() {
+        for (int i = 0; i < instructions.length; i++) {
+            instructions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Get the metrics of this JVM.
+     *
+     * @return The metrics.
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /*
+     * The methods below count. Callers check ENABLED first, so that no call
+     * is made when counting is off.
+     */
+
+    // count a finished tick
+    static void tick() {
+        INSTANCE.ticks.increment();
+    }
+
+    // count a turn of the JIT engine, which counts no instructions
+    static void turn() {
+        INSTANCE.turns.increment();
+    }
+
+    // count a turn of an interpreter
+    static void interpretedTurn() {
+        INSTANCE.turns.increment();
+        INSTANCE.interpretedTurns.increment();
+    }
+
+    // count an instruction executed by an interpreter
+    static void instruction(int opcode) {
+        INSTANCE.instructions[opcode].increment();
+    }
+
+    // count a hop that moved a creature
+    static void hop() {
+        INSTANCE.hops.increment();
+    }
+
+    // count an infection that changed a creature's species
+    static void infection() {
+        INSTANCE.infections.increment();
+    }
+
+    /**
+     * The number of creatures of each species in one world.
+     */
+    static final class Population {
+        private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+        // count a square changing from one species to another; either may
+        // be null, for a creature arriving in or leaving the world
+        void changed(Species from, Species to) {
+            if (from != null) {
+                counts.computeIfAbsent(from.getName(), name -> new LongAdder()).decrement();
+            }
+            if (to != null) {
+                counts.computeIfAbsent(to.getName(), name -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    // start counting the population of a world, until it is released or
+    // the world is garbage collected
+    static Population population(Object world) {
+        Population population = new Population();
+        INSTANCE.populations.add(population);
+        CLEANER.register(world, () -> INSTANCE.populations.remove(population));
+        return population;
+    }
+
+    // stop counting the population of a world
+    static void release(Population population) {
+        INSTANCE.populations.remove(population);
+    }
+
+    @Override
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    @Override
+    public double getTicksPerSecond() {
+        measureRates();
+        return ticksPerSecond;
+    }
+
+    @Override
+    public long getTurns() {
+        return turns.sum();
+    }
+
+    @Override
+    public double getTurnsPerSecond() {
+        measureRates();
+        return turnsPerSecond;
+    }
+
+    @Override
+    public long getInstructions() {
+        long total = 0;
+        for (LongAdder count : instructions) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public double getStepsPerTurn() {
+        measureRates();
+        return stepsPerTurn;
+    }
+
+    @Override
+    public Map<String, Long> getInstructionCounts() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < instructions.length; i++) {
+            counts.put(OPCODE_NAMES[i], instructions[i].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getHops() {
+        return hops.sum();
+    }
+
+    @Override
+    public long getInfections() {
+        return infections.sum();
+    }
+
+    @Override
+    public Map<String, Long> getPopulation() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        for (Population population : populations) {
+            population.counts.forEach((name, count) -> counts.merge(name, count.sum(), Long::sum));
+        }
+        return counts;
+    }
+
+    @Override
+    public int getWorlds() {
+        return populations.size();
+    }
+
+    // measure the rates again if the last measurement was long enough ago
+    private synchronized void measureRates() {
+        long now = System.nanoTime();
+        if (now - rateStart < RATE_NANOS) {
+            return;
+        }
+        double seconds = (now - rateStart) / 1e9;
+        long ticksNow = ticks.sum();
+        long turnsNow = turns.sum();
+        long instructionsNow = getInstructions();
+        long interpretedNow = interpretedTurns.sum();
+        ticksPerSecond = (ticksNow - ticksAtStart) / seconds;
+        turnsPerSecond = (turnsNow - turnsAtStart) / seconds;
+        long interpreted = interpretedNow - interpretedTurnsAtStart;
+        stepsPerTurn = interpreted == 0 ? 0
+            : (double) (instructionsNow - instructionsAtStart) / interpreted;
+        rateStart = now;
+        ticksAtStart = ticksNow;
+        turnsAtStart = turnsNow;
+        instructionsAtStart = instructionsNow;
+        interpretedTurnsAtStart = interpretedNow;
+    }
+
+    // the name of each opcode value, which is the ordinal of an Opcode
+    // except for the superinstruction
+    private static String[] opcodeNames() {
+        Opcode[] opcodes = Opcode.values();
+        String[] names = new String[CompiledProgram.SENSE_HOP + 1];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = i < opcodes.length ? opcodes[i].name().toLowerCase() : "sensehop";
+        }
+        return names;
+    }
+
+}
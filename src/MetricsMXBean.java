@@ -0,0 +1,96 @@
+import java.util.Map;
+
+/**
+ * This interface represents the management view of Metrics: the counters of
+ * every simulation in this JVM, readable with any JMX client (such as
+ * jconsole) under the name bugfight:type=Metrics.
+ *
+ * The rates are measured between readings: each is taken over the time
+ * since the previous reading of the rates that was at least a second
+ * before, so a client polling every few seconds sees the rates of the last
+ * few seconds.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Get the number of ticks finished.
+     *
+     * @return The number of ticks.
+     */
+    long getTicks();
+
+    /**
+     * Get the number of ticks finished per second, lately.
+     *
+     * @return The rate.
+     */
+    double getTicksPerSecond();
+
+    /**
+     * Get the number of creature turns taken.
+     *
+     * @return The number of turns.
+     */
+    long getTurns();
+
+    /**
+     * Get the number of creature turns taken per second, lately.
+     *
+     * @return The rate.
+     */
+    double getTurnsPerSecond();
+
+    /**
+     * Get the number of instructions the interpreters executed.
+     *
+     * @return The number of instructions.
+     */
+    long getInstructions();
+
+    /**
+     * Get the number of instructions executed per interpreted turn, lately.
+     * A species stuck in a long chain of branches shows here first. The
+     * generated code of the JIT engine counts no instructions, so with it
+     * this is 0.
+     *
+     * @return The mean number of instructions per turn.
+     */
+    double getStepsPerTurn();
+
+    /**
+     * Get the number of instructions the interpreters executed, by opcode.
+     *
+     * @return The counts, by opcode name.
+     */
+    Map<String, Long> getInstructionCounts();
+
+    /**
+     * Get the number of hops that moved a creature.
+     *
+     * @return The number of hops.
+     */
+    long getHops();
+
+    /**
+     * Get the number of infections that changed a creature's species.
+     *
+     * @return The number of infections.
+     */
+    long getInfections();
+
+    /**
+     * Get the number of creatures of each species, over every simulation in
+     * this JVM that is still running.
+     *
+     * @return The populations, by species name.
+     */
+    Map<String, Long> getPopulation();
+
+    /**
+     * Get the number of worlds whose creatures the population counts.
+     *
+     * @return The number of worlds.
+     */
+    int getWorlds();
+
+}
@@ -0,0 +1,290 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class runs the ticks of a simulation on many threads. The world is cut
+ * into rectangular tiles, and the tiles are run in four phases, like the
+ * squares of a checkerboard: in each phase, only tiles with an even or odd
+ * column and an even or odd row take their turns. Two tiles of the same phase
+ * are always separated by a tile of another phase, so their creatures can
+ * sense each other's squares but never change them, and the tiles of a phase
+ * can run concurrently on a ForkJoinPool.
+ *
+ * Within a tile, creatures take their turns one after another, in an order
+ * shuffled with a random stream of their own for that tile and tick. A hop or
+ * infect whose square lies in another tile is not taken right away: it is
+ * put off until every tile of the phase has finished, and then taken in tile
+ * order. The result of a tick depends only on the world's seed, never on the
+ * number of threads or on how they are scheduled.
+ *
+ * Each creature takes exactly one turn per tick, as with the sequential loop
+ * of Driver, but creatures of different tiles take their turns in a different
+ * order than they would there, so the two do not give the same match.
+ *
+ * Only a dense World can be ticked in parallel, and the world map must not be
+ * displayed, since drawing is not thread-safe.
+ */
+public class ParallelTicker {
+
+    /**
+     * The default width and height of a tile.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    // the number of checkerboard phases of a tick
+    private static final int PHASES = 4;
+
+    // the smallest number of tiles run by one fork/join task
+    private static final int TILES_PER_TASK = 2;
+
+    /**
+     * The creatures whose turns are taken in one tile during a tick.
+     */
+    private static class Tile {
+        // the shuffle of the tile's creatures comes from this stream
+        private final WorldRandom random = new WorldRandom(0);
+
+        // indices of the creatures in the tile, in the order they take turns
+        private int[] order = new int[16];
+        private int count = 0;
+
+        // the hops and infects that leave the tile, in the order decided
+        private int[] deferredCreatures = new int[16];
+        private int[] deferredActions = new int[16];
+        private int deferredCount = 0;
+
+        private void add(int creature) {
+            if (count == order.length) {
+                order = Arrays.copyOf(order, count * 2);
+            }
+            order[count++] = creature;
+        }
+
+        private void defer(int creature, int action) {
+            if (deferredCount == deferredCreatures.length) {
+                deferredCreatures = Arrays.copyOf(deferredCreatures, deferredCount * 2);
+                deferredActions = Arrays.copyOf(deferredActions, deferredCount * 2);
+            }
+            deferredCreatures[deferredCount] = creature;
+            deferredActions[deferredCount] = action;
+            deferredCount++;
+        }
+    }
+
+    // the world and every creature in it
+    private final World world;
+    private final Creature[] creatures;
+
+    // the pool that runs the tiles of each phase
+    private final ForkJoinPool pool;
+
+    // the size of a tile, and the number of tiles across and down the world
+    private final int tileWidth, tileHeight;
+    private final int tilesX, tilesY;
+
+    // every tile, allocated when a creature is first in it
+    private final Tile[] tiles;
+
+    // the occupied tiles of each phase during the current tick, in order
+    private final int[][] phaseTiles = new int[PHASES][];
+    private final int[] phaseCounts = new int[PHASES];
+
+    // the seed of the current tick's tile streams
+    private long tickSeed;
+
+    // the number of ticks run so far
+    private long ticks = 0;
+
+    /**
+     * Create a ticker for the given world and creatures, with tiles of the
+     * default size, that runs on the common fork/join pool.
+     *
+     * @param world The world the creatures live in.
+     * @param creatures Every creature of the world.
+     */
+    public ParallelTicker(World world, List<Creature> creatures) {
+        this(world, creatures, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a ticker for the given world and creatures. Squares of the same
+     * row share words of the world's occupancy bitset, so the tile width must
+     * be a multiple of 64.
+     *
+     * @param world The world the creatures live in.
+     * @param creatures Every creature of the world.
+     * @param tileWidth The width of a tile, a positive multiple of 64.
+     * @param tileHeight The height of a tile, which is positive.
+     * @param pool The pool to run tiles on.
+     */
+    public ParallelTicker(World world, List<Creature> creatures,
+            int tileWidth, int tileHeight, ForkJoinPool pool) {
+        if (world.getClass() != World.class) {
+            throw new IllegalArgumentException("only a dense World can be ticked in parallel");
+        } else if (tileWidth <= 0 || tileWidth % 64 != 0) {
+            throw new IllegalArgumentException("tile width must be a positive multiple of 64");
+        } else if (tileHeight <= 0) {
+            throw new IllegalArgumentException("tile height must be >0");
+        }
+        this.world = world;
+        this.creatures = creatures.toArray(new Creature[0]);
+        this.pool = pool;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.tilesX = (world.width() + tileWidth - 1) / tileWidth;
+        this.tilesY = (world.height() + tileHeight - 1) / tileHeight;
+        this.tiles = new Tile[tilesX * tilesY];
+        for (int phase = 0; phase < PHASES; phase++) {
+            phaseTiles[phase] = new int[16];
+        }
+    }
+
+    /**
+     * Get the number of ticks run so far.
+     *
+     * @return The number of ticks.
+     */
+    public long ticks() {
+        return ticks;
+    }
+
+    /**
+     * Give every creature one turn.
+     */
+    public void tick() {
+        tickSeed = world.random().nextLong();
+        sortIntoTiles();
+
+        // the phase that goes first changes from tick to tick, so that no
+        // tile is always first
+        int first = (int) (tickSeed >>> 62);
+        for (int i = 0; i < PHASES; i++) {
+            int phase = (first + i) % PHASES;
+            int count = phaseCounts[phase];
+            if (count == 0) {
+                continue;
+            }
+            int[] phaseTileList = phaseTiles[phase];
+            if (count <= TILES_PER_TASK) {
+                for (int j = 0; j < count; j++) {
+                    runTile(phaseTileList[j]);
+                }
+            } else {
+                pool.invoke(new PhaseTask(phaseTileList, 0, count));
+            }
+            finishPhase(phaseTileList, count);
+        }
+        ticks++;
+    }
+
+    /*
+     * Put each creature into the tile it is in at the start of the tick, and
+     * list the occupied tiles of each phase in increasing order.
+     */
+    private void sortIntoTiles() {
+        for (int phase = 0; phase < PHASES; phase++) {
+            for (int j = 0; j < phaseCounts[phase]; j++) {
+                tiles[phaseTiles[phase][j]].count = 0;
+            }
+            phaseCounts[phase] = 0;
+        }
+        for (int i = 0; i < creatures.length; i++) {
+            Creature creature = creatures[i];
+            int index = tileIndex(creature.x, creature.y);
+            Tile tile = tiles[index];
+            if (tile == null) {
+                tile = tiles[index] = new Tile();
+            }
+            tile.add(i);
+        }
+        for (int index = 0; index < tiles.length; index++) {
+            if (tiles[index] != null && tiles[index].count > 0) {
+                int phase = phase(index);
+                int count = phaseCounts[phase];
+                if (count == phaseTiles[phase].length) {
+                    phaseTiles[phase] = Arrays.copyOf(phaseTiles[phase], count * 2);
+                }
+                phaseTiles[phase][count] = index;
+                phaseCounts[phase] = count + 1;
+            }
+        }
+    }
+
+    /*
+     * Give each creature of the given tile its turn. Actions that change only
+     * squares of the tile are taken at once; the rest are deferred.
+     */
+    private void runTile(int index) {
+        Tile tile = tiles[index];
+        tile.random.setState(WorldRandom.mix64(tickSeed + index * WorldRandom.GAMMA));
+        tile.random.shuffle(tile.order, tile.count);
+        tile.deferredCount = 0;
+
+        for (int i = 0; i < tile.count; i++) {
+            Creature creature = creatures[tile.order[i]];
+            int action = creature.decide();
+            int actionX = creature.actionX(action);
+            int actionY = creature.actionY(action);
+            if (!world.inBounds(actionX, actionY) || tileIndex(actionX, actionY) == index) {
+                creature.perform(action);
+            } else {
+                tile.defer(tile.order[i], action);
+            }
+        }
+    }
+
+    // take the deferred actions of a phase's tiles, tile by tile
+    private void finishPhase(int[] phaseTileList, int count) {
+        for (int j = 0; j < count; j++) {
+            Tile tile = tiles[phaseTileList[j]];
+            for (int i = 0; i < tile.deferredCount; i++) {
+                creatures[tile.deferredCreatures[i]].perform(tile.deferredActions[i]);
+            }
+            tile.deferredCount = 0;
+        }
+    }
+
+    // the index of the tile holding the given square
+    private int tileIndex(int x, int y) {
+        return (y / tileHeight) * tilesX + x / tileWidth;
+    }
+
+    // the checkerboard phase of the given tile
+    private int phase(int index) {
+        int column = index % tilesX;
+        int row = index / tilesX;
+        return (column & 1) | (row & 1) << 1;
+    }
+
+    /**
+     * Runs a range of the tiles of one phase, splitting it in half until it is
+     * small.
+     */
+    private class PhaseTask extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+        private final int[] phaseTileList;
+        private final int from, to;
+
+        private PhaseTask(int[] phaseTileList, int from, int to) {
+            this.phaseTileList = phaseTileList;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TILES_PER_TASK) {
+                for (int j = from; j < to; j++) {
+                    runTile(phaseTileList[j]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PhaseTask(phaseTileList, from, middle),
+                new PhaseTask(phaseTileList, middle, to));
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class represents a cache of species programs, keyed by the SHA-256
+ * hash of their text, so that a program is parsed and compiled once however
+ * many times its file is loaded, and a changed file is never mistaken for
+ * the old one. The cache holds a bounded number of programs, dropping the
+ * least recently used first.
+ *
+ * Loading a file still reads it, which is cheap; only the parsing and
+ * compiling are saved. A whole directory of species files is loaded in
+ * parallel. The cache may be used from any number of threads.
+ */
+public class ProgramCache {
+
+    /**
+     * The number of programs the shared cache holds, which is 256 unless
+     * -Dbugfight.programs says otherwise.
+     */
+    public static final int SHARED_CAPACITY = Integer.getInteger("bugfight.programs", 256);
+
+    // the cache used by Species
+    private static final ProgramCache SHARED = new ProgramCache(SHARED_CAPACITY);
+
+    // the programs by hash, least recently used first
+    private final LinkedHashMap<String, SpeciesProgram> programs;
+
+    // the number of loads that found their program, and that did not
+    private long hits;
+    private long misses;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param capacity The most programs to hold, which is positive.
+     */
+    public ProgramCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be >0");
+        }
+        programs = new LinkedHashMap<String, SpeciesProgram>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SpeciesProgram> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the cache that Species loads its files through.
+     *
+     * @return The shared cache.
+     */
+    public static ProgramCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the program of a species file, parsing and compiling it only if no
+     * file with the same text has been loaded. Throws a BadSpeciesException
+     * if the file cannot be read or is not a well-formed program.
+     *
+     * @param file The species file.
+     * @return The program.
+     */
+    public SpeciesProgram load(Path file) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new Species.BadSpeciesException("cannot read species file " + file);
+        }
+        return get(bytes);
+    }
+
+    /**
+     * Get the programs of several species files, loading them in parallel.
+     *
+     * @param files The species files.
+     * @return The programs, in the order of the files.
+     */
+    public List<SpeciesProgram> loadAll(List<Path> files) {
+        return files.parallelStream().map(this::load).collect(Collectors.toList());
+    }
+
+    /**
+     * Get the programs of every species file (every .txt file) in a
+     * directory, loading them in parallel.
+     *
+     * @param directory The directory.
+     * @return The programs, in the order of their file names.
+     * @throws IOException If the directory cannot be listed.
+     */
+    public List<SpeciesProgram> loadDirectory(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().endsWith(".txt"))
+                .sorted().collect(Collectors.toList());
+        }
+        return loadAll(files);
+    }
+
+    /**
+     * Get the program of the given text of a species file, parsing and
+     * compiling it only if the same text has not been seen.
+     *
+     * @param text The text, in UTF-8.
+     * @return The program.
+     */
+    public SpeciesProgram get(byte[] text) {
+        String hash = hash(text);
+        synchronized (this) {
+            SpeciesProgram program = programs.get(hash);
+            if (program != null) {
+                hits++;
+                return program;
+            }
+            misses++;
+        }
+        // compiled outside the lock, so that other files load meanwhile;
+        // if the same text was compiled at the same time, the first is kept
+        SpeciesProgram compiled = new SpeciesProgram(new String(text, StandardCharsets.UTF_8));
+        synchronized (this) {
+            SpeciesProgram program = programs.putIfAbsent(hash, compiled);
+            return program == null ? compiled : program;
+        }
+    }
+
+    /**
+     * Get the number of programs held.
+     *
+     * @return The number of programs.
+     */
+    public synchronized int size() {
+        return programs.size();
+    }
+
+    /**
+     * Get the number of loads that found their program already compiled.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of loads that had to parse and compile their program.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Drop every program held.
+     */
+    public synchronized void clear() {
+        programs.clear();
+    }
+
+    // the SHA-256 hash of some text, in hexadecimal
+    private static String hash(byte[] text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest(text)) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+}
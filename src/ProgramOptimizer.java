@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class optimizes compiled species programs and analyzes their control
+ * flow. Within one turn, a program is a graph whose nodes are instruction
+ * addresses: a conditional jump leads to its target and to the next address,
+ * go leads to its target, a label leads to the next address, and the
+ * terminating instructions (hop, left, right and infect) end the turn.
+ *
+ * The optimizer keeps every instruction at its original address, so a
+ * creature's program counter means the same thing before and after
+ * optimization. It only changes where control goes next:
+ * <ul>
+ * <li>jumps and fall-throughs skip label instructions, and follow chains of
+ * go instructions to their final target;</li>
+ * <li>the common sensing sequence 'ifenemy X / ifwall Y / ifsame Y / hop' is
+ * fused into a single SENSE_HOP superinstruction.</li>
+ * </ul>
+ */
+public class ProgramOptimizer {
+
+    /**
+     * A group of instructions that can run in a cycle without executing any
+     * terminating instruction.
+     */
+    public static class Cycle {
+
+        private final int[] addresses;
+        private final boolean canExit;
+
+        private Cycle(int[] addresses, boolean canExit) {
+            this.addresses = addresses;
+            this.canExit = canExit;
+        }
+
+        /**
+         * Get the addresses of the instructions in the cycle, in increasing
+         * order.
+         *
+         * @return The instruction addresses.
+         */
+        public int[] addresses() {
+            return addresses.clone();
+        }
+
+        /**
+         * Get whether any instruction in the cycle can jump or fall through to
+         * an instruction outside of it. A creature that enters a cycle that
+         * cannot exit never finishes its turn.
+         *
+         * @return True iff the cycle has a way out.
+         */
+        public boolean canExit() {
+            return canExit;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(addresses) + (canExit ? "" : " (never exits)");
+        }
+
+    }
+
+    // not for instantiation
+    private ProgramOptimizer() {
+    }
+
+    /**
+     * Optimize the given program. The result behaves exactly like the given
+     * program, but executes fewer instructions per turn.
+     *
+     * @param program The program to optimize.
+     * @return The optimized program.
+     */
+    public static CompiledProgram optimize(CompiledProgram program) {
+        int size = program.size();
+        byte[] opcodes = program.opcodes();
+        int[] targets = program.targets();
+        int[] alternates = program.alternates();
+        int[] next = program.nexts();
+
+        // skip labels and collapse chains of jumps
+        for (int i = 0; i < size; i++) {
+            next[i] = resolve(program, next[i]);
+            if (targets[i] != CompiledProgram.NO_TARGET) {
+                targets[i] = resolve(program, targets[i]);
+            }
+        }
+
+        // fuse 'ifenemy X / ifwall Y / ifsame Y / hop' along the resolved flow
+        for (int i = 0; i < size; i++) {
+            if (program.opcode(i) != CompiledProgram.IFENEMY) {
+                continue;
+            }
+            int wall = next[i];
+            if (!is(program, wall, CompiledProgram.IFWALL)) {
+                continue;
+            }
+            int same = next[wall];
+            if (!is(program, same, CompiledProgram.IFSAME) || targets[same] != targets[wall]) {
+                continue;
+            }
+            int hop = next[same];
+            if (!is(program, hop, CompiledProgram.HOP)) {
+                continue;
+            }
+            opcodes[i] = CompiledProgram.SENSE_HOP;
+            alternates[i] = targets[wall];
+            next[i] = next[hop];
+        }
+
+        return new CompiledProgram(program.instructions(), program.labels(),
+            opcodes, targets, alternates, next);
+    }
+
+    /**
+     * Find every cycle of the given program that contains no terminating
+     * instruction. Each cycle is a strongly connected group of instructions in
+     * the program's control flow graph.
+     *
+     * @param program The program to analyze.
+     * @return The cycles, ordered by their lowest address.
+     */
+    public static List<Cycle> nonTerminatingCycles(CompiledProgram program) {
+        int size = program.size();
+        int[][] successors = new int[size][];
+        for (int i = 0; i < size; i++) {
+            successors[i] = successors(program, i);
+        }
+
+        // Tarjan's algorithm, with an explicit stack instead of recursion
+        int[] index = new int[size];
+        int[] lowLink = new int[size];
+        boolean[] onStack = new boolean[size];
+        Arrays.fill(index, -1);
+        int[] stack = new int[size];
+        int stackSize = 0;
+        int[] callNode = new int[size];
+        int[] callEdge = new int[size];
+        int nextIndex = 0;
+        List<Cycle> cycles = new ArrayList<>();
+
+        for (int root = 0; root < size; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callNode[0] = root;
+            callEdge[0] = 0;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int node = callNode[depth];
+                if (callEdge[depth] < successors[node].length) {
+                    int successor = successors[node][callEdge[depth]++];
+                    if (index[successor] < 0) {
+                        index[successor] = lowLink[successor] = nextIndex++;
+                        stack[stackSize++] = successor;
+                        onStack[successor] = true;
+                        depth++;
+                        callNode[depth] = successor;
+                        callEdge[depth] = 0;
+                    } else if (onStack[successor]) {
+                        lowLink[node] = Math.min(lowLink[node], index[successor]);
+                    }
+                    continue;
+                }
+
+                // all successors are done; pop a component if node is its root
+                if (lowLink[node] == index[node]) {
+                    int start = stackSize;
+                    do {
+                        start--;
+                        onStack[stack[start]] = false;
+                    } while (stack[start] != node);
+                    int[] component = Arrays.copyOfRange(stack, start, stackSize);
+                    stackSize = start;
+                    if (isCycle(component, successors)) {
+                        Arrays.sort(component);
+                        cycles.add(new Cycle(component, canExit(component, successors)));
+                    }
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callNode[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+            }
+        }
+
+        cycles.sort((a, b) -> Integer.compare(a.addresses[0], b.addresses[0]));
+        return cycles;
+    }
+
+    /*
+     * Get the addresses that control can go to after the instruction at the
+     * given address, within the same turn.
+     */
+    private static int[] successors(CompiledProgram program, int address) {
+        int target = program.target(address);
+        int next = program.next(address);
+        int[] result;
+        switch (program.opcode(address)) {
+            case CompiledProgram.IFEMPTY:
+            case CompiledProgram.IFWALL:
+            case CompiledProgram.IFSAME:
+            case CompiledProgram.IFENEMY:
+            case CompiledProgram.IFRANDOM:
+                result = new int[] { target, next };
+                break;
+            case CompiledProgram.SENSE_HOP:
+                result = new int[] { target, program.alternate(address) };
+                break;
+            case CompiledProgram.GO:
+                result = new int[] { target };
+                break;
+            case CompiledProgram.LABEL:
+                result = new int[] { next };
+                break;
+            default:
+                // terminating instructions end the turn
+                return new int[0];
+        }
+        // running past the last instruction is not an edge of the graph
+        int count = 0;
+        for (int successor : result) {
+            if (successor < program.size()) {
+                result[count++] = successor;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // whether a strongly connected component contains a cycle
+    private static boolean isCycle(int[] component, int[][] successors) {
+        if (component.length > 1) {
+            return true;
+        }
+        for (int successor : successors[component[0]]) {
+            if (successor == component[0]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether any edge leaves the given component, whose addresses are sorted
+    private static boolean canExit(int[] component, int[][] successors) {
+        for (int node : component) {
+            for (int successor : successors[node]) {
+                if (Arrays.binarySearch(component, successor) < 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Follow labels and go instructions from the given address to the first
+     * instruction that does something. A cycle made only of labels and go
+     * instructions is left alone.
+     */
+    private static int resolve(CompiledProgram program, int address) {
+        int current = address;
+        for (int steps = 0; steps <= program.size(); steps++) {
+            if (current >= program.size()) {
+                return current;
+            }
+            byte opcode = program.opcode(current);
+            if (opcode == CompiledProgram.LABEL) {
+                current = program.next(current);
+            } else if (opcode == CompiledProgram.GO) {
+                current = program.target(current);
+            } else {
+                return current;
+            }
+        }
+        return address;
+    }
+
+    // whether the given address holds an instruction with the given opcode
+    private static boolean is(CompiledProgram program, int address, byte opcode) {
+        return address < program.size() && program.opcode(address) == opcode;
+    }
+
+}
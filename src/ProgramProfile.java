@@ -0,0 +1,170 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents a profile of one species program: how many turns
+ * its creatures took, how often the instruction at each address executed,
+ * and how often each conditional jump was taken. Species authors use it to
+ * find the hot paths of a program and cut the instructions it executes per
+ * turn, which is most of what a simulation costs.
+ *
+ * The counts are of the optimized program that the engine runs, so label
+ * and go instructions that the optimizer skips show as never executed. A
+ * fused 'ifenemy / ifwall / ifsame / hop' sequence counts at its ifenemy
+ * address, as taken when it jumps to the ifenemy target and as turned when
+ * it turns to the ifwall and ifsame target.
+ *
+ * Profiling is off unless the JVM is started with -Dbugfight.profile=true.
+ * ENABLED is a constant, so when it is false the JIT compiler removes every
+ * check of it. The interpreters are profiled; the generated code of the JIT
+ * engine is not. The counters are LongAdders, so a parallel tick can count
+ * from many threads.
+ */
+public class ProgramProfile {
+
+    /**
+     * Whether profiling is on.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("bugfight.profile");
+
+    // the program profiled
+    private final CompiledProgram program;
+
+    // the turns taken, and the counts of each address
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder[] executed;
+    private final LongAdder[] taken;
+    private final LongAdder[] turned;
+
+    /**
+     * Create an empty profile of a program.
+     *
+     * @param program The program to profile.
+     */
+    public ProgramProfile(CompiledProgram program) {
+        this.program = program;
+        executed = adders(program.size());
+        taken = adders(program.size());
+        turned = adders(program.size());
+    }
+
+    // count a turn
+    void countTurn() {
+        turns.increment();
+    }
+
+    // count the execution of the instruction at an address
+    void countExecuted(int address) {
+        executed[address].increment();
+    }
+
+    // count a conditional jump taken at an address
+    void countTaken(int address) {
+        taken[address].increment();
+    }
+
+    // count a turn to the alternate target of a superinstruction
+    void countTurned(int address) {
+        turned[address].increment();
+    }
+
+    /**
+     * Get the number of turns the program took.
+     *
+     * @return The number of turns.
+     */
+    public long turns() {
+        return turns.sum();
+    }
+
+    /**
+     * Get the number of times the instruction at an address executed.
+     *
+     * @param address The instruction address.
+     * @return The number of executions.
+     */
+    public long executed(int address) {
+        return executed[address].sum();
+    }
+
+    /**
+     * Get the number of times the conditional jump at an address was taken.
+     *
+     * @param address The instruction address.
+     * @return The number of jumps.
+     */
+    public long taken(int address) {
+        return taken[address].sum();
+    }
+
+    /**
+     * Get the number of instructions executed per turn.
+     *
+     * @return The mean, or 0 before any turns.
+     */
+    public double stepsPerTurn() {
+        long total = 0;
+        for (LongAdder count : executed) {
+            total += count.sum();
+        }
+        long t = turns();
+        return t == 0 ? 0 : (double) total / t;
+    }
+
+    /**
+     * Get the program's source text, one instruction per line, annotated with
+     * how often each executed and each conditional jump was taken.
+     *
+     * @return The annotated program.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format(
+            "%,d turns, %.2f steps per turn%n%14s %14s %7s  %s%n",
+            turns(), stepsPerTurn(), "executed", "taken", "address", "instruction"));
+        for (int address = 0; address < program.size(); address++) {
+            Instruction instruction = program.instruction(address);
+            long count = executed(address);
+            String jumps = "";
+            if (isConditional(program.opcode(address)) && count > 0) {
+                jumps = String.format("%,d", taken(address));
+            }
+            String source = "    " + instruction.getOpcode().name().toLowerCase();
+            if (instruction.getOpcode() == Opcode.LABEL) {
+                source = instruction.toString();
+            } else if (instruction.getLabel() != null) {
+                source += " " + instruction.getLabel();
+            }
+            if (program.opcode(address) == CompiledProgram.SENSE_HOP) {
+                source += String.format("    (fused to hop; turned %,d)", turned[address].sum());
+            }
+            text.append(String.format("%14s %14s %7d  %s%n",
+                count == 0 ? "" : String.format("%,d", count), jumps, address, source));
+        }
+        return text.toString();
+    }
+
+    // whether an opcode value is a conditional jump
+    private static boolean isConditional(byte opcode) {
+        switch (opcode) {
+            case CompiledProgram.IFEMPTY:
+            case CompiledProgram.IFWALL:
+            case CompiledProgram.IFSAME:
+            case CompiledProgram.IFENEMY:
+            case CompiledProgram.IFRANDOM:
+            case CompiledProgram.SENSE_HOP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // an array of new counters
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+}
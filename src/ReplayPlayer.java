@@ -0,0 +1,555 @@
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class represents a player of a file written by a ReplayRecorder. It
+ * holds the world as it was after some tick, and can step forward one tick at
+ * a time or seek to any tick: seeking starts from the keyframe at or before
+ * the tick, so it reads at most one keyframe interval of records.
+ *
+ * After each seek or step, changes() lists the squares that look different,
+ * ready to be offered to a FrameRing that the world map follows.
+ *
+ * A file whose recording was never closed has no index; the player then
+ * finds the keyframes by reading the file once, and plays up to the last
+ * complete tick.
+ */
+public class ReplayPlayer implements Closeable {
+
+    // the size of the read buffer
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // the directions, by ordinal
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // the file read, and the part of it in the buffer
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bufferOffset;
+
+    // the size of the world
+    private final int width, height;
+
+    // the offset of the first record after the header
+    private final long recordsOffset;
+
+    // the ticks and file offsets of the keyframes, and the last tick
+    private long[] keyframeTicks = new long[16];
+    private long[] keyframeOffsets = new long[16];
+    private int keyframes = 0;
+    private long lastTick;
+
+    // the name and color of each species id, from 1
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<Color> colors = new ArrayList<>();
+
+    /*
+     * The creatures, each with a slot: its square, species id and direction
+     * ordinal. The slot of the creature on each square, plus one, or 0 if the
+     * square is empty, by index y * width + x.
+     */
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private int[] species = new int[16];
+    private byte[] dirs = new byte[16];
+    private int creatures = 0;
+    private final int[] slotAt;
+
+    // the square of the last record, which the next is relative to
+    private int lastX, lastY;
+
+    // the tick the world is at, and whether a keyframe has been read
+    private long tick;
+    private boolean loaded = false;
+
+    // the squares changed by the last seek or step
+    private final FrameRing.Frame changes = new FrameRing.Frame();
+
+    /**
+     * Open a replay file, at the first tick recorded.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file cannot be read or is not a replay.
+     */
+    public ReplayPlayer(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            seekFile(0);
+            if (readInt() != ReplayRecorder.MAGIC) {
+                throw new IOException("not a replay file: " + file);
+            }
+            int version = readByte();
+            if (version != ReplayRecorder.VERSION) {
+                throw new IOException("unknown replay version " + version);
+            }
+            width = (int) readVarint();
+            height = (int) readVarint();
+            readVarint(); // the keyframe interval, implied by the index
+            recordsOffset = position();
+            slotAt = new int[Math.multiplyExact(width, height)];
+            if (!readIndex()) {
+                scan();
+            }
+            if (keyframes == 0) {
+                throw new IOException("replay has no keyframe: " + file);
+            }
+            seek(keyframeTicks[0]);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the width of the world.
+     *
+     * @return The width.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Get the height of the world.
+     *
+     * @return The height.
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Get the tick the world is at: the number of ticks finished.
+     *
+     * @return The tick.
+     */
+    public long tick() {
+        return tick;
+    }
+
+    /**
+     * Get the first tick recorded.
+     *
+     * @return The tick of the first keyframe.
+     */
+    public long firstTick() {
+        return keyframeTicks[0];
+    }
+
+    /**
+     * Get the last tick recorded.
+     *
+     * @return The tick.
+     */
+    public long lastTick() {
+        return lastTick;
+    }
+
+    /**
+     * Get the squares that look different since the last seek or step.
+     *
+     * @return The changes, which are replaced by the next seek or step.
+     */
+    public FrameRing.Frame changes() {
+        return changes;
+    }
+
+    /**
+     * Get the species id of the creature on a square.
+     *
+     * @param x The x coordinate of the square.
+     * @param y The y coordinate of the square.
+     * @return The species id, from 1, or World.EMPTY if the square is empty.
+     */
+    public short squareAt(int x, int y) {
+        int slot = slotAt[y * width + x];
+        return slot == 0 ? World.EMPTY : (short) species[slot - 1];
+    }
+
+    /**
+     * Get the direction of the creature on a square.
+     *
+     * @param x The x coordinate of the square.
+     * @param y The y coordinate of the square.
+     * @return The direction, or null if the square is empty.
+     */
+    public Direction directionAt(int x, int y) {
+        int slot = slotAt[y * width + x];
+        return slot == 0 ? null : DIRECTIONS[dirs[slot - 1]];
+    }
+
+    /**
+     * Get the name of a species.
+     *
+     * @param id The species id, from 1.
+     * @return The name.
+     */
+    public String speciesName(short id) {
+        return names.get(id - 1);
+    }
+
+    /**
+     * Get the color of a species.
+     *
+     * @param id The species id, from 1.
+     * @return The color, or null if it had none.
+     */
+    public Color speciesColor(short id) {
+        return colors.get(id - 1);
+    }
+
+    /**
+     * Move to the given tick, starting from the nearest keyframe before it
+     * unless the tick is a little ahead of the current one.
+     *
+     * @param target The tick, which is clamped to those recorded.
+     * @throws IOException If the file cannot be read.
+     */
+    public void seek(long target) throws IOException {
+        target = Math.max(firstTick(), Math.min(target, lastTick));
+        int keyframe = Arrays.binarySearch(keyframeTicks, 0, keyframes, target);
+        if (keyframe < 0) {
+            keyframe = -keyframe - 2;
+        }
+        changes.clear();
+        if (!loaded || target < tick || keyframeTicks[keyframe] > tick) {
+            // clear the old creatures, then read the keyframe
+            for (int slot = 0; slot < creatures; slot++) {
+                slotAt[ys[slot] * width + xs[slot]] = 0;
+                changes.add(xs[slot], ys[slot], ' ', null, null);
+            }
+            creatures = 0;
+            seekFile(keyframeOffsets[keyframe]);
+            if (readByte() != ReplayRecorder.KEYFRAME) {
+                throw new IOException("bad keyframe offset " + keyframeOffsets[keyframe]);
+            }
+            readKeyframe();
+            loaded = true;
+        }
+        while (tick < target) {
+            readTick();
+        }
+    }
+
+    /**
+     * Move forward one tick.
+     *
+     * @return False if the last tick recorded had already been reached.
+     * @throws IOException If the file cannot be read.
+     */
+    public boolean step() throws IOException {
+        changes.clear();
+        if (tick >= lastTick) {
+            return false;
+        }
+        readTick();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // read the records of the next tick, up to and including its end
+    private void readTick() throws IOException {
+        while (true) {
+            int first = readByte();
+            int kind = first & 7;
+            if (kind == ReplayRecorder.TICK) {
+                tick++;
+                return;
+            } else if (kind == ReplayRecorder.KEYFRAME) {
+                // the world is already as the keyframe says
+                skipKeyframe();
+                continue;
+            } else if (kind == ReplayRecorder.SPECIES) {
+                readSpecies((int) readVarint());
+                continue;
+            } else if (kind == ReplayRecorder.INDEX) {
+                throw new EOFException("replay ends at tick " + tick);
+            }
+            readSquare();
+            int square = lastY * width + lastX;
+            if (kind == ReplayRecorder.ADD) {
+                addCreature(lastX, lastY, (int) readVarint(), (byte) (first >>> 3));
+                drawSquare(lastX, lastY);
+            } else if (kind == ReplayRecorder.MOVE) {
+                int slot = slotOf(square);
+                slotAt[square] = 0;
+                changes.add(lastX, lastY, ' ', null, null);
+                switch (DIRECTIONS[dirs[slot]]) {
+                    case NORTH:
+                        ys[slot]--;
+                        break;
+                    case SOUTH:
+                        ys[slot]++;
+                        break;
+                    case EAST:
+                        xs[slot]++;
+                        break;
+                    case WEST:
+                        xs[slot]--;
+                        break;
+                    default:
+                        throw new IllegalStateException("bad direction");
+                }
+                slotAt[ys[slot] * width + xs[slot]] = slot + 1;
+                drawSquare(xs[slot], ys[slot]);
+            } else if (kind == ReplayRecorder.TURN) {
+                dirs[slotOf(square)] = (byte) (first >>> 3);
+                drawSquare(lastX, lastY);
+            } else {
+                species[slotOf(square)] = (int) readVarint();
+                drawSquare(lastX, lastY);
+            }
+        }
+    }
+
+    // read a keyframe after its first byte, replacing the world
+    private void readKeyframe() throws IOException {
+        tick = readVarint();
+        int count = (int) readVarint();
+        for (int id = 1; id <= count; id++) {
+            readSpecies(id);
+        }
+        int population = (int) readVarint();
+        lastX = 0;
+        lastY = 0;
+        for (int i = 0; i < population; i++) {
+            int first = readByte();
+            readSquare();
+            addCreature(lastX, lastY, (int) readVarint(), (byte) (first >>> 3));
+            drawSquare(lastX, lastY);
+        }
+        lastX = 0;
+        lastY = 0;
+    }
+
+    // read past a keyframe after its first byte
+    private void skipKeyframe() throws IOException {
+        readVarint();
+        int count = (int) readVarint();
+        for (int id = 1; id <= count; id++) {
+            readSpecies(id);
+        }
+        long population = readVarint();
+        for (long i = 0; i < population; i++) {
+            readByte();
+            readVarint();
+            readVarint();
+            readVarint();
+        }
+        lastX = 0;
+        lastY = 0;
+    }
+
+    // read a species's color and name, and note them under the given id
+    private void readSpecies(int id) throws IOException {
+        int rgb = (int) readVarint();
+        int length = (int) readVarint();
+        if (length > BUFFER_SIZE) {
+            throw new IOException("bad species name length " + length);
+        }
+        fill(length);
+        byte[] name = new byte[length];
+        buffer.get(name);
+        if (id > names.size()) {
+            names.add(new String(name, StandardCharsets.UTF_8));
+            colors.add(rgb == 0 ? null : new Color(rgb - 1));
+        }
+    }
+
+    // read a record's square, relative to the last
+    private void readSquare() throws IOException {
+        lastX += unzigzag(readVarint());
+        lastY += unzigzag(readVarint());
+    }
+
+    // the slot of the creature on a square that a record names
+    private int slotOf(int square) throws IOException {
+        int slot = slotAt[square] - 1;
+        if (slot < 0) {
+            throw new IOException("no creature at " + lastX + "," + lastY
+                + " in tick " + (tick + 1));
+        }
+        return slot;
+    }
+
+    // give a new creature a slot
+    private void addCreature(int x, int y, int id, byte dir) {
+        if (creatures == xs.length) {
+            int capacity = creatures * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            species = Arrays.copyOf(species, capacity);
+            dirs = Arrays.copyOf(dirs, capacity);
+        }
+        xs[creatures] = x;
+        ys[creatures] = y;
+        species[creatures] = id;
+        dirs[creatures] = dir;
+        creatures++;
+        slotAt[y * width + x] = creatures;
+    }
+
+    // note how a square with a creature now looks
+    private void drawSquare(int x, int y) {
+        short id = squareAt(x, y);
+        changes.add(x, y, speciesName(id).charAt(0), directionAt(x, y), speciesColor(id));
+    }
+
+    /*
+     * Read the index at the end of the file, if it is there.
+     */
+    private boolean readIndex() throws IOException {
+        long size = channel.size();
+        if (size < recordsOffset + 12) {
+            return false;
+        }
+        seekFile(size - 12);
+        long indexOffset = readLong();
+        if (readInt() != ReplayRecorder.END_MAGIC || indexOffset < recordsOffset
+                || indexOffset >= size - 12) {
+            return false;
+        }
+        seekFile(indexOffset);
+        if (readByte() != ReplayRecorder.INDEX) {
+            return false;
+        }
+        lastTick = readVarint();
+        int count = (int) readVarint();
+        long keyframeTick = 0;
+        long keyframeOffset = 0;
+        for (int i = 0; i < count; i++) {
+            keyframeTick += readVarint();
+            keyframeOffset += readVarint();
+            addKeyframe(keyframeTick, keyframeOffset);
+        }
+        return true;
+    }
+
+    /*
+     * Read every record of the file, to find the keyframes and the last
+     * complete tick of a recording that was not closed.
+     */
+    private void scan() throws IOException {
+        seekFile(recordsOffset);
+        long scanned = -1;
+        try {
+            while (true) {
+                long offset = position();
+                int first = readByte();
+                int kind = first & 7;
+                if (kind == ReplayRecorder.TICK) {
+                    scanned++;
+                    lastTick = scanned;
+                } else if (kind == ReplayRecorder.KEYFRAME) {
+                    long keyframeTick = readVarint();
+                    seekFile(offset + 1);
+                    skipKeyframe();
+                    addKeyframe(keyframeTick, offset);
+                    scanned = keyframeTick;
+                    lastTick = scanned;
+                } else if (kind == ReplayRecorder.SPECIES) {
+                    readVarint();
+                    readSpecies(Integer.MAX_VALUE);
+                } else if (kind == ReplayRecorder.INDEX) {
+                    break;
+                } else {
+                    readVarint();
+                    readVarint();
+                    if (kind == ReplayRecorder.ADD || kind == ReplayRecorder.INFECT) {
+                        readVarint();
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // the recording stopped part way through a record
+        }
+        names.clear();
+        colors.clear();
+    }
+
+    // note a keyframe's tick and offset
+    private void addKeyframe(long keyframeTick, long offset) {
+        if (keyframes == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeTicks[keyframes] = keyframeTick;
+        keyframeOffsets[keyframes] = offset;
+        keyframes++;
+    }
+
+    // a number written by zigzag, back to a signed number
+    private static int unzigzag(long value) {
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    // read a non-negative number, 7 bits to a byte, low bits first
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("bad varint at " + position());
+    }
+
+    private int readByte() throws IOException {
+        fill(1);
+        return buffer.get() & 0xFF;
+    }
+
+    private int readInt() throws IOException {
+        fill(4);
+        return buffer.getInt();
+    }
+
+    private long readLong() throws IOException {
+        fill(8);
+        return buffer.getLong();
+    }
+
+    // the offset in the file of the next byte read
+    private long position() {
+        return bufferOffset + buffer.position();
+    }
+
+    // start reading at the given offset in the file
+    private void seekFile(long offset) {
+        bufferOffset = offset;
+        buffer.clear().limit(0);
+    }
+
+    // make sure the buffer holds at least the given number of unread bytes
+    private void fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        bufferOffset += buffer.position();
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            int read = channel.read(buffer, bufferOffset + buffer.position());
+            if (read < 0) {
+                buffer.flip();
+                throw new EOFException("replay ends at offset " + (bufferOffset + buffer.limit()));
+            }
+        }
+        buffer.flip();
+    }
+
+}
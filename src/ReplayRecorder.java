@@ -0,0 +1,338 @@
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class represents a simulation listener that records everything that
+ * happens in a simulation to a compact binary file, which a ReplayPlayer can
+ * later play back from any tick.
+ *
+ * The file is a header, then a stream of records, then an index. Each hop,
+ * turn, infection and new creature is one record naming its square as the
+ * distance from the square of the record before, so most records are two or
+ * three bytes. Every keyframeInterval ticks a keyframe records the whole
+ * world, and the index at the end lists where each keyframe starts, so a
+ * player can start from the keyframe before any tick and replay at most one
+ * interval of records to reach it.
+ *
+ * Records are written through a buffer to a FileChannel. The listener methods
+ * are synchronized, so a recorder may be used with a ParallelTicker.
+ */
+public class ReplayRecorder implements SimulationListener, Closeable {
+
+    /**
+     * The number of ticks between keyframes by default.
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+    // the first and last ints of a replay file, and its version
+    static final int MAGIC = 0x42465250; // "BFRP"
+    static final int END_MAGIC = 0x42464958; // "BFIX"
+    static final int VERSION = 1;
+
+    /*
+     * The kinds of record. The kind is the low 3 bits of a record's first
+     * byte; a direction, where a record has one, is the next 2 bits.
+     */
+    static final int TICK = 0; // the end of a tick
+    static final int ADD = 1; // square, species id; a creature was created
+    static final int MOVE = 2; // square; the creature there hopped forward
+    static final int TURN = 3; // square; the creature there turned
+    static final int INFECT = 4; // square, species id; the creature there was infected
+    static final int SPECIES = 5; // id, color, name; a species first seen
+    static final int KEYFRAME = 6; // tick, species, creatures; the whole world
+    static final int INDEX = 7; // last tick, keyframe ticks and offsets
+
+    // the size of the write buffer
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // the simulation recorded
+    private final Simulation simulation;
+
+    // the file written
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    // the number of ticks between keyframes
+    private final int keyframeInterval;
+
+    // the id of each species seen, from 1
+    private final HashMap<Species, Integer> speciesIds = new HashMap<>();
+
+    // the ticks and file offsets of the keyframes written
+    private long[] keyframeTicks = new long[16];
+    private long[] keyframeOffsets = new long[16];
+    private int keyframes = 0;
+
+    // the square of the last record, which the next is relative to
+    private int lastX, lastY;
+
+    // the last tick finished
+    private long tick;
+
+    // whether close has been called
+    private boolean closed = false;
+
+    /**
+     * Create a recorder of the given simulation, writing to the given file
+     * with a keyframe every DEFAULT_KEYFRAME_INTERVAL ticks.
+     *
+     * @param simulation The simulation to record.
+     * @param file The file to write, replacing any file already there.
+     * @throws IOException If the file cannot be written.
+     */
+    public ReplayRecorder(Simulation simulation, Path file) throws IOException {
+        this(simulation, file, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Create a recorder of the given simulation, writing to the given file.
+     * The world as it is now is written as the first keyframe; the recorder
+     * must then be set as (or called by) the world's listener.
+     *
+     * @param simulation The simulation to record.
+     * @param file The file to write, replacing any file already there.
+     * @param keyframeInterval The number of ticks between keyframes.
+     * @throws IOException If the file cannot be written.
+     */
+    public ReplayRecorder(Simulation simulation, Path file, int keyframeInterval)
+            throws IOException {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("keyframe interval must be >0");
+        }
+        this.simulation = simulation;
+        this.keyframeInterval = keyframeInterval;
+        this.tick = simulation.ticks();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        World world = simulation.world();
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        putVarint(world.width());
+        putVarint(world.height());
+        putVarint(keyframeInterval);
+        writeKeyframe();
+    }
+
+    @Override
+    public synchronized void creatureAdded(Creature creature) {
+        if (closed) {
+            return;
+        }
+        try {
+            int id = speciesId(creature.species());
+            putSquare(ADD, creature.direction(), creature.x(), creature.y());
+            putVarint(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void creatureMoved(Creature creature, int fromX, int fromY) {
+        if (closed) {
+            return;
+        }
+        try {
+            putSquare(MOVE, null, fromX, fromY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void creatureTurned(Creature creature) {
+        if (closed) {
+            return;
+        }
+        try {
+            putSquare(TURN, creature.direction(), creature.x(), creature.y());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void creatureInfected(Creature creature) {
+        if (closed) {
+            return;
+        }
+        try {
+            int id = speciesId(creature.species());
+            putSquare(INFECT, null, creature.x(), creature.y());
+            putVarint(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void tickFinished(long tick) {
+        if (closed) {
+            return;
+        }
+        this.tick = tick;
+        try {
+            ensure(1);
+            buffer.put((byte) TICK);
+            if (tick % keyframeInterval == 0) {
+                writeKeyframe();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the index and close the file. Anything reported afterwards is
+     * ignored.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long indexOffset = offset();
+            ensure(1);
+            buffer.put((byte) INDEX);
+            putVarint(tick);
+            putVarint(keyframes);
+            long lastTick = 0;
+            long lastOffset = 0;
+            for (int i = 0; i < keyframes; i++) {
+                putVarint(keyframeTicks[i] - lastTick);
+                putVarint(keyframeOffsets[i] - lastOffset);
+                lastTick = keyframeTicks[i];
+                lastOffset = keyframeOffsets[i];
+            }
+            ensure(12);
+            buffer.putLong(indexOffset);
+            buffer.putInt(END_MAGIC);
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /*
+     * Write the species seen so far and every creature of the simulation,
+     * and note where in the file they start.
+     */
+    private void writeKeyframe() throws IOException {
+        for (Creature creature : simulation.creatures()) {
+            speciesId(creature.species());
+        }
+        if (keyframes == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeTicks[keyframes] = tick;
+        keyframeOffsets[keyframes] = offset();
+        keyframes++;
+
+        ensure(1);
+        buffer.put((byte) KEYFRAME);
+        putVarint(tick);
+        putVarint(speciesIds.size());
+        Species[] byId = new Species[speciesIds.size()];
+        speciesIds.forEach((species, id) -> byId[id - 1] = species);
+        for (Species species : byId) {
+            putSpecies(species);
+        }
+        putVarint(simulation.creatures().size());
+        lastX = 0;
+        lastY = 0;
+        for (Creature creature : simulation.creatures()) {
+            putSquare(ADD, creature.direction(), creature.x(), creature.y());
+            putVarint(speciesIds.get(creature.species()));
+        }
+        lastX = 0;
+        lastY = 0;
+    }
+
+    // the id of a species, writing it down if it is new
+    private int speciesId(Species species) throws IOException {
+        Integer id = speciesIds.get(species);
+        if (id == null) {
+            id = speciesIds.size() + 1;
+            speciesIds.put(species, id);
+            ensure(1);
+            buffer.put((byte) SPECIES);
+            putVarint(id);
+            putSpecies(species);
+        }
+        return id;
+    }
+
+    // write a species's color, or 0 if it has none, and its name
+    private void putSpecies(Species species) throws IOException {
+        Color color = species.getColor();
+        putVarint(color == null ? 0 : (color.getRGB() & 0xFFFFFF) + 1);
+        byte[] name = species.getName().getBytes(StandardCharsets.UTF_8);
+        putVarint(name.length);
+        ensure(name.length);
+        buffer.put(name);
+    }
+
+    // write the first byte of a record, and its square relative to the last
+    private void putSquare(int kind, Direction dir, int x, int y) throws IOException {
+        ensure(1);
+        buffer.put((byte) (kind | (dir == null ? 0 : dir.ordinal() << 3)));
+        putVarint(zigzag(x - lastX));
+        putVarint(zigzag(y - lastY));
+        lastX = x;
+        lastY = y;
+    }
+
+    // write a non-negative number, 7 bits to a byte, low bits first
+    private void putVarint(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // a signed number as a non-negative one, small if it is near zero
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    // make room in the buffer for the given number of bytes
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+            if (buffer.remaining() < bytes) {
+                throw new IOException("record too large: " + bytes + " bytes");
+            }
+        }
+    }
+
+    // the offset in the file of the next byte written
+    private long offset() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    // write the buffer to the file
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+}
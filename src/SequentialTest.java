@@ -0,0 +1,119 @@
+/**
+ * This class represents a sequential probability ratio test of which of two
+ * species is the stronger, from the scores of the matches between them (1
+ * for a win, 0.5 for a draw, 0 for a loss, from the first species's side).
+ *
+ * The test weighs the hypothesis that the first species's expected score is
+ * 0.5 + margin against the hypothesis that it is 0.5 - margin, using the
+ * normal approximation to the log-likelihood ratio with the scores' sample
+ * variance. It is decided once the ratio leaves the bounds set by the
+ * confidence; two species closer than the margin may never decide it, and
+ * are played until the limit of matches.
+ */
+public class SequentialTest {
+
+    // the smallest variance used, so that a run of identical scores
+    // decides the test instead of dividing by zero
+    private static final double MIN_VARIANCE = 1e-3;
+
+    // the two hypotheses, as expected scores
+    private final double lower;
+    private final double upper;
+
+    // the bounds of the log-likelihood ratio
+    private final double acceptLower;
+    private final double acceptUpper;
+
+    // the scores so far
+    private int matches;
+    private double sum;
+    private double sumOfSquares;
+
+    /**
+     * Create a test with no scores yet.
+     *
+     * @param confidence The chance of deciding correctly when the species
+     *        differ by at least the margin, between 0.5 and 1.
+     * @param margin How far from an even score counts as a real difference,
+     *        between 0 and 0.5.
+     */
+    public SequentialTest(double confidence, double margin) {
+        check(confidence, margin);
+        lower = 0.5 - margin;
+        upper = 0.5 + margin;
+        double error = 1 - confidence;
+        acceptLower = Math.log(error / (1 - error));
+        acceptUpper = Math.log((1 - error) / error);
+    }
+
+    /**
+     * Check the confidence and margin of a test, throwing an
+     * IllegalArgumentException if either is out of range.
+     *
+     * @param confidence The chance of deciding correctly, between 0.5 and 1.
+     * @param margin How far from an even score counts as a real difference,
+     *        between 0 and 0.5.
+     */
+    public static void check(double confidence, double margin) {
+        if (!(confidence > 0.5 && confidence < 1)) {
+            throw new IllegalArgumentException("confidence must be between 0.5 and 1");
+        } else if (!(margin > 0 && margin < 0.5)) {
+            throw new IllegalArgumentException("margin must be between 0 and 0.5");
+        }
+    }
+
+    /**
+     * Add the score of a match.
+     *
+     * @param score The first species's score: 1, 0.5 or 0.
+     */
+    public void add(double score) {
+        matches++;
+        sum += score;
+        sumOfSquares += score * score;
+    }
+
+    /**
+     * Get the number of scores added.
+     *
+     * @return The number of matches.
+     */
+    public int matches() {
+        return matches;
+    }
+
+    /**
+     * Get the first species's mean score.
+     *
+     * @return The mean score, or 0.5 before any matches.
+     */
+    public double mean() {
+        return matches == 0 ? 0.5 : sum / matches;
+    }
+
+    /**
+     * Get the log-likelihood ratio of the upper hypothesis to the lower.
+     *
+     * @return The ratio, which is 0 before any matches.
+     */
+    public double logLikelihoodRatio() {
+        if (matches == 0) {
+            return 0;
+        }
+        double mean = mean();
+        double variance = Math.max(sumOfSquares / matches - mean * mean, MIN_VARIANCE);
+        return matches * (upper - lower) * (2 * mean - lower - upper) / (2 * variance);
+    }
+
+    /**
+     * Get the outcome of the test so far.
+     *
+     * @return 1 if the first species is the stronger, -1 if the second is,
+     *         or 0 if the test is not yet decided.
+     */
+    public int decision() {
+        double ratio = logLikelihoodRatio();
+        return ratio >= acceptUpper ? 1 : ratio <= acceptLower ? -1 : 0;
+    }
+
+}
@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents a running Bug Fight simulation: a world, the creatures
+ * in it, and the loop that gives them their turns. A simulation knows nothing
+ * about how it is displayed; everything that happens is reported to the
+ * world's SimulationListener, and with the default listener a simulation runs
+ * as fast as the processor allows.
+ */
+public class Simulation {
+
+    /**
+     * How the creatures of a tick take their turns.
+     */
+    public enum Mode {
+        /** One after another, in a shuffled order. */
+        SEQUENTIAL,
+        /** All deciding at once, then acting together (see SynchronousTicker). */
+        SYNCHRONOUS,
+        /** In parallel tiles of the world (see ParallelTicker). */
+        TILED
+    }
+
+    // the world the creatures live in
+    private final World world;
+
+    // how creatures take their turns
+    private final Mode mode;
+
+    // every creature, in the order they were added
+    private final ArrayList<Creature> creatures = new ArrayList<>();
+
+    // the indexes of the creatures in the order of the last sequential tick
+    private int[] order = new int[16];
+
+    // the ticker of a synchronous or tiled simulation, made at the first tick
+    // after creatures are added
+    private SynchronousTicker synchronousTicker;
+    private ParallelTicker parallelTicker;
+
+    // the number of ticks run so far
+    private long ticks = 0;
+
+    /**
+     * Create a sequential simulation of the given world, which should be
+     * empty.
+     *
+     * @param world The world to simulate.
+     */
+    public Simulation(World world) {
+        this(world, Mode.SEQUENTIAL);
+    }
+
+    /**
+     * Create a simulation of the given world, which should be empty.
+     *
+     * @param world The world to simulate.
+     * @param mode How creatures take their turns.
+     */
+    public Simulation(World world, Mode mode) {
+        this.world = world;
+        this.mode = mode;
+    }
+
+    /**
+     * Get the world of the simulation.
+     *
+     * @return The world.
+     */
+    public World world() {
+        return world;
+    }
+
+    /**
+     * Get how the creatures of a tick take their turns.
+     *
+     * @return The mode.
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Get every creature of the simulation, in the order they were added.
+     *
+     * @return An unmodifiable list of the creatures.
+     */
+    public List<Creature> creatures() {
+        return Collections.unmodifiableList(creatures);
+    }
+
+    /**
+     * Get the number of ticks run so far.
+     *
+     * @return The number of ticks.
+     */
+    public long ticks() {
+        return ticks;
+    }
+
+    /**
+     * Create a creature and place it in the world.
+     *
+     * @param species The species of the creature.
+     * @param x The x coordinate of the creature, which must be unoccupied.
+     * @param y The y coordinate of the creature, which must be unoccupied.
+     * @param dir The direction of the creature.
+     * @return The new creature.
+     */
+    public Creature add(Species species, int x, int y, Direction dir) {
+        if (world.get(x, y) != null) {
+            throw new IllegalArgumentException("square already occupied: " + new Position(x, y));
+        }
+        Creature creature = new Creature(species, world, x, y, dir);
+        world.set(x, y, creature);
+        creatures.add(creature);
+        if (creatures.size() > order.length) {
+            order = Arrays.copyOf(order, order.length * 2);
+        }
+        order[creatures.size() - 1] = creatures.size() - 1;
+        synchronousTicker = null;
+        parallelTicker = null;
+        return creature;
+    }
+
+    /**
+     * Create a creature facing a random direction, and place it on a random
+     * unoccupied square of the world.
+     *
+     * @param species The species of the creature.
+     * @return The new creature.
+     */
+    public Creature addAtRandom(Species species) {
+        if (world.population() == (long) world.width() * world.height()) {
+            throw new IllegalStateException("world is full");
+        }
+        int x = world.randomX();
+        int y = world.randomY();
+        // never place a creature on top of another one
+        while (world.occupied(x, y)) {
+            x = world.randomX();
+            y = world.randomY();
+        }
+        return add(species, x, y, Direction.random(world.random()));
+    }
+
+    /**
+     * Finish the simulation: its creatures stop being counted in the
+     * population of the Metrics. A simulation dropped without this stops
+     * being counted once it is garbage collected.
+     */
+    public void finish() {
+        world.finish();
+    }
+
+    /**
+     * Count the creatures of the given species.
+     *
+     * @param species The species to count.
+     * @return The number of creatures of that species.
+     */
+    public int population(Species species) {
+        int count = 0;
+        for (Creature creature : creatures) {
+            if (creature.species() == species) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Give every creature one turn, and then tell the listener that the tick
+     * is finished.
+     */
+    public void tick() {
+        switch (mode) {
+            case SYNCHRONOUS:
+                if (synchronousTicker == null) {
+                    synchronousTicker = new SynchronousTicker(world, creatures);
+                }
+                synchronousTicker.tick();
+                break;
+            case TILED:
+                if (parallelTicker == null) {
+                    parallelTicker = new ParallelTicker(world, creatures);
+                }
+                parallelTicker.tick();
+                break;
+            default:
+                world.random().shuffle(order, creatures.size());
+                for (int i = 0; i < creatures.size(); i++) {
+                    creatures.get(order[i]).execute();
+                }
+                break;
+        }
+        ticks++;
+        if (Metrics.ENABLED) {
+            Metrics.tick();
+        }
+        world.listener().tickFinished(ticks);
+    }
+
+    /*
+     * The turn order of the last sequential tick, as indexes into
+     * creatures(); the next tick shuffles this order again, so it is part of
+     * the state of a simulation.
+     */
+    int[] turnOrder() {
+        return Arrays.copyOf(order, creatures.size());
+    }
+
+    // restore the tick count and turn order saved from another simulation
+    void restore(long ticks, int[] turnOrder) {
+        this.ticks = ticks;
+        System.arraycopy(turnOrder, 0, order, 0, creatures.size());
+    }
+
+    /**
+     * Run the given number of ticks, without pausing.
+     *
+     * @param count The number of ticks to run.
+     */
+    public void run(long count) {
+        for (long i = 0; i < count; i++) {
+            tick();
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * This interface represents an observer of a simulation, such as a display or
+ * a recorder. A world reports every change to its creatures to its listener,
+ * as it happens, and the end of every tick, so a listener may either act on
+ * each change at once or collect the changes of a tick and handle them
+ * together when the tick is finished.
+ *
+ * Every method does nothing by default. Listeners are called on the thread
+ * that runs the simulation; with a ParallelTicker, changes within a tick may
+ * be reported from several threads at once.
+ */
+public interface SimulationListener {
+
+    /**
+     * A listener that ignores everything, for running without a display.
+     */
+    SimulationListener NONE = new SimulationListener() {
+    };
+
+    /**
+     * Get a listener that passes everything on to two listeners, the first
+     * and then the second.
+     *
+     * @param first The first listener.
+     * @param second The second listener.
+     * @return A listener calling both.
+     */
+    static SimulationListener both(SimulationListener first, SimulationListener second) {
+        return new SimulationListener() {
+            @Override
+            public void creatureAdded(Creature creature) {
+                first.creatureAdded(creature);
+                second.creatureAdded(creature);
+            }
+
+            @Override
+            public void creatureMoved(Creature creature, int fromX, int fromY) {
+                first.creatureMoved(creature, fromX, fromY);
+                second.creatureMoved(creature, fromX, fromY);
+            }
+
+            @Override
+            public void creatureTurned(Creature creature) {
+                first.creatureTurned(creature);
+                second.creatureTurned(creature);
+            }
+
+            @Override
+            public void creatureInfected(Creature creature) {
+                first.creatureInfected(creature);
+                second.creatureInfected(creature);
+            }
+
+            @Override
+            public void tickFinished(long tick) {
+                first.tickFinished(tick);
+                second.tickFinished(tick);
+            }
+        };
+    }
+
+    /**
+     * Called when a creature is created.
+     *
+     * @param creature The new creature.
+     */
+    default void creatureAdded(Creature creature) {
+    }
+
+    /**
+     * Called when a creature hops to a new square.
+     *
+     * @param creature The creature, at its new position.
+     * @param fromX The x coordinate the creature moved from.
+     * @param fromY The y coordinate the creature moved from.
+     */
+    default void creatureMoved(Creature creature, int fromX, int fromY) {
+    }
+
+    /**
+     * Called when a creature turns left or right. The turn of a taken ifwall
+     * or ifsame is reported when the creature takes its next action, before
+     * the action itself.
+     *
+     * @param creature The creature, facing its new direction.
+     */
+    default void creatureTurned(Creature creature) {
+    }
+
+    /**
+     * Called when a creature is infected, whether or not its species changed.
+     *
+     * @param creature The infected creature, with its new species.
+     */
+    default void creatureInfected(Creature creature) {
+    }
+
+    /**
+     * Called when every creature has taken its turn of a tick.
+     *
+     * @param tick The number of ticks finished so far.
+     */
+    default void tickFinished(long tick) {
+    }
+
+}
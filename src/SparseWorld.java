@@ -0,0 +1,229 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * This class represents a world that stores its board as fixed-size tiles of
+ * 64 by 64 squares, allocated only where there are creatures. Tiles are kept
+ * in an array, found through a LongIntMap keyed by the tile's coordinates
+ * packed into a long, and a tile that becomes empty is removed and returned
+ * to a pool for reuse.
+ * Memory therefore grows with the number of occupied tiles, not with the size
+ * of the world, which makes huge and mostly empty arenas affordable.
+ *
+ * A SparseWorld follows the same inBounds, get and set contract as World, and
+ * creatures run in it unchanged.
+ */
+public class SparseWorld extends World {
+
+    // tiles are TILE_SIZE by TILE_SIZE squares
+    private static final int TILE_SHIFT = 6;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    // the most empty tiles kept for reuse
+    private static final int POOL_LIMIT = 1024;
+
+    /**
+     * One tile of the board. A tile is allocated while at least one of its
+     * squares is occupied.
+     */
+    private static class Tile {
+        private final Creature[] creatures = new Creature[TILE_SIZE * TILE_SIZE];
+        private final short[] squares = new short[TILE_SIZE * TILE_SIZE];
+        private final long[] occupancy = new long[TILE_SIZE];
+        private int count = 0;
+
+        // the key of the tile while it is allocated
+        private long key;
+    }
+
+    // the allocated tiles, in no particular order
+    private Tile[] tiles = new Tile[16];
+    private int tileCount = 0;
+
+    // the index in tiles of each allocated tile, by key
+    private final LongIntMap tileIndexes = new LongIntMap();
+
+    // empty tiles ready for reuse; all of their squares are clear
+    private final ArrayDeque<Tile> pool = new ArrayDeque<>();
+
+    // the number of creatures in the world
+    private int population = 0;
+
+    /**
+     * Create a new sparse world consisting of width columns and height rows.
+     * Initially, the world contains no creatures and no tiles.
+     *
+     * @param width The width of the world.
+     * @param height The height of the world.
+     */
+    public SparseWorld(int width, int height) {
+        this(width, height, new WorldRandom().seed());
+    }
+
+    /**
+     * Create a new sparse world consisting of width columns and height rows,
+     * whose randomness comes from a generator with the given seed.
+     *
+     * @param width The width of the world.
+     * @param height The height of the world.
+     * @param seed The seed of the world's random generator.
+     */
+    public SparseWorld(int width, int height, long seed) {
+        super(width, height, new WorldRandom(seed), false);
+    }
+
+    /**
+     * Get the number of tiles currently allocated.
+     *
+     * @return The number of tiles.
+     */
+    public int tileCount() {
+        return tileCount;
+    }
+
+    @Override
+    public Creature get(int x, int y) {
+        if (!inBounds(x, y)) {
+            throw new IllegalArgumentException("bad position: " + new Position(x, y));
+        }
+        Tile tile = tile(key(x, y));
+        return tile == null ? null : tile.creatures[index(x, y)];
+    }
+
+    @Override
+    public void set(int x, int y, Creature creature) {
+        if (!inBounds(x, y)) {
+            throw new IllegalArgumentException("bad position: " + new Position(x, y));
+        }
+        long key = key(x, y);
+        Tile tile = tile(key);
+        if (creature == null && tile == null) {
+            return;
+        } else if (tile == null) {
+            tile = pool.isEmpty() ? new Tile() : pool.pop();
+            addTile(key, tile);
+        }
+
+        int index = index(x, y);
+        boolean wasOccupied = tile.creatures[index] != null;
+        short oldId = tile.squares[index];
+        tile.creatures[index] = creature;
+        if (creature == null) {
+            tile.squares[index] = EMPTY;
+            tile.occupancy[index >>> TILE_SHIFT] &= ~(1L << index);
+        } else {
+            tile.squares[index] = speciesId(creature.species());
+            creature.speciesId = tile.squares[index];
+            tile.occupancy[index >>> TILE_SHIFT] |= 1L << index;
+        }
+        countChange(x, y, oldId, tile.squares[index]);
+
+        if (wasOccupied && creature == null) {
+            population--;
+            if (--tile.count == 0) {
+                removeTile(key);
+                if (pool.size() < POOL_LIMIT) {
+                    pool.push(tile);
+                }
+            }
+        } else if (!wasOccupied && creature != null) {
+            population++;
+            tile.count++;
+        }
+    }
+
+    @Override
+    public void move(int fromX, int fromY, int toX, int toY) {
+        Creature creature = get(fromX, fromY);
+        set(toX, toY, creature);
+        set(fromX, fromY, null);
+    }
+
+    @Override
+    public boolean occupied(int x, int y) {
+        Tile tile = tile(key(x, y));
+        int index = index(x, y);
+        return tile != null && (tile.occupancy[index >>> TILE_SHIFT] & (1L << index)) != 0;
+    }
+
+    @Override
+    public int population() {
+        return population;
+    }
+
+    @Override
+    public short squareAt(int x, int y) {
+        if (!inBounds(x, y)) {
+            return WALL;
+        }
+        Tile tile = tile(key(x, y));
+        return tile == null ? EMPTY : tile.squares[index(x, y)];
+    }
+
+    @Override
+    protected void countExisting(TileCounts counts) {
+        for (int i = 0; i < tileCount; i++) {
+            Tile tile = tiles[i];
+            int tileX = (int) tile.key << TILE_SHIFT;
+            int tileY = (int) (tile.key >>> 32) << TILE_SHIFT;
+            for (int index = 0; index < TILE_SIZE * TILE_SIZE; index++) {
+                if (tile.squares[index] > EMPTY) {
+                    counts.add(tileX + (index & TILE_MASK), tileY + (index >>> TILE_SHIFT),
+                        tile.squares[index], 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachCreature(Consumer<Creature> action) {
+        for (int i = 0; i < tileCount; i++) {
+            for (Creature creature : tiles[i].creatures) {
+                if (creature != null) {
+                    action.accept(creature);
+                }
+            }
+        }
+    }
+
+    // the allocated tile of the given key, or null
+    private Tile tile(long key) {
+        int i = tileIndexes.get(key);
+        return i == LongIntMap.ABSENT ? null : tiles[i];
+    }
+
+    // allocate a tile under the given key
+    private void addTile(long key, Tile tile) {
+        if (tileCount == tiles.length) {
+            tiles = Arrays.copyOf(tiles, tileCount * 2);
+        }
+        tile.key = key;
+        tiles[tileCount] = tile;
+        tileIndexes.put(key, tileCount++);
+    }
+
+    // free the tile of the given key, moving the last tile into its place
+    private void removeTile(long key) {
+        int i = tileIndexes.get(key);
+        tileIndexes.remove(key);
+        Tile last = tiles[--tileCount];
+        tiles[tileCount] = null;
+        if (i != tileCount) {
+            tiles[i] = last;
+            tileIndexes.put(last.key, i);
+        }
+    }
+
+    // the key of the tile holding the given square
+    private static long key(int x, int y) {
+        return ((long) (y >>> TILE_SHIFT) << 32) | (x >>> TILE_SHIFT);
+    }
+
+    // the index of the given square within its tile
+    private static int index(int x, int y) {
+        return ((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK);
+    }
+
+}
@@ -1,6 +1,10 @@
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -40,21 +44,48 @@ public class Species {
 
     private String name;
     private final Color colorOfSpecies;
-    private ArrayList<Instruction> program;
+    private final SpeciesProgram speciesProgram;
 
     /**
      * Create a new species using the given Darwin program and the specified
      * color. May throw a BadSpeciesException if the given file does not exist or
-     * does not contain a well-formed Darwin program.
+     * does not contain a well-formed Darwin program. The program is parsed
+     * and compiled only the first time a file with its text is loaded; see
+     * ProgramCache. A file ending in .bfs is a compiled program, which is
+     * loaded without parsing; see BinarySpecies.
      *
      * @param filename The filename of a Darwin program.
      * @param color The color to use for this species.
      */
     public Species(String filename, Color color) {
+        this(load(filename), color);
+    }
 
+    /**
+     * Create a new species that runs an already loaded program, in the
+     * specified color. Any number of species may share a program.
+     *
+     * @param program The species program.
+     * @param color The color to use for this species.
+     */
+    public Species(SpeciesProgram program, Color color) {
+        this.speciesProgram = program;
+        this.name = program.name();
         this.colorOfSpecies = color;
-        this.program = parser(filename);
+    }
 
+    // the program of a species file, in either form
+    private static SpeciesProgram load(String filename) {
+        if (!filename.endsWith(BinarySpecies.EXTENSION)) {
+            return ProgramCache.shared().load(Paths.get(filename));
+        }
+        try {
+            return BinarySpecies.load(Paths.get(filename));
+        } catch (NoSuchFileException e) {
+            throw new BadSpeciesException("cannot read species file " + filename);
+        } catch (IOException e) {
+            throw new BadSpeciesException(e.getMessage());
+        }
     }
 
     /**
@@ -65,8 +96,6 @@ public class Species {
      */
     public ArrayList<Instruction> parser(String filename){
 
-        int counter = 0;
-
         // Making a new arraylist to store instructions
         ArrayList<Instruction> storage = new ArrayList<>();
 
@@ -81,53 +110,10 @@ public class Species {
             return null;
         }
 
-        while (fileInput.hasNext()){
-
-            // get the next line in the file
-            String line = fileInput.nextLine();
-
-            // assign the first line of the file to the name of the species
-            if (counter == 0){
-                this.name = line;
-                // increment the counter so that the name isn't re-assigned
-                counter++;
-                continue;
-            }
-
-            // ignore the lines that are blank or are comments
-            if (line.startsWith("#") || line.equals("")){
-                continue;
-            }
-
-            // split the line into an array
-            String[] splitLine = line.split(" ");
-
-            // make an opcode out of the first element of the split line
-            Opcode speciesOpcode = Opcode.fromString(splitLine[0]);
-
-            // check to see if the line a label
-            if (splitLine[0].charAt(splitLine[0].length() - 1) == ':'){
-                speciesOpcode = Opcode.LABEL;
-                // remove the colon from the end of the label
-                splitLine[0] = splitLine[0].substring(0,splitLine[0].length() - 1);
-                Instruction ints = new Instruction(speciesOpcode, splitLine[0]);
-                // add label to the Arraylist
-                storage.add(ints);
-            }
-            else if(splitLine.length == 1){
-
-                // if the splitline array only has one element, make an instruction out of it and add to arraylist
-                Instruction currentInstruction = new Instruction(speciesOpcode);
-                storage.add(currentInstruction);
-
-            }
-            else if (splitLine.length == 2){
-
-                // if two elements, make an instruction out of the opcaode and label and add it to the arraylist
-                Instruction currentInstruction = new Instruction(speciesOpcode, splitLine[1]);
-                storage.add(currentInstruction);
-            }
-
+        // assign the first line of the file to the name of the species
+        String parsedName = SpeciesProgram.parse(fileInput, storage);
+        if (parsedName != null) {
+            this.name = parsedName;
         }
         return storage;
     }
@@ -156,7 +142,7 @@ public class Species {
      * @return The number of species program instructions.
      */
     public int programSize() {
-        return program.size();
+        return speciesProgram.instructions().size();
     }
 
     /**
@@ -166,7 +152,7 @@ public class Species {
      * @return The specified instruction.
      */
     public Instruction programStep(int address) {
-        return program.get(address);
+        return speciesProgram.instructions().get(address);
     }
 
     /**
@@ -178,13 +164,49 @@ public class Species {
      * @return The instruction address of the given label.
      */
     public int getLabelAddress(String label) {
-        for (int i = 0; i < program.size(); i++) {
-            Instruction x = program.get(i);
-            if (x.getOpcode() == Opcode.LABEL && x.getLabel().equals(label)){
-                return i;
-            }
-        }
-        return 0;
+        int address = speciesProgram.compiled().labelAddress(label);
+        return address < 0 ? 0 : address;
+    }
+
+    /**
+     * Get the compiled form of the species program, in which every jump target
+     * is already resolved to an instruction address.
+     *
+     * @return The compiled species program.
+     */
+    public CompiledProgram getCompiledProgram() {
+        return speciesProgram.compiled();
+    }
+
+    /**
+     * Get the generated code for the species program. The code is generated
+     * when the species is loaded if the JIT engine is selected, or otherwise
+     * the first time it is needed.
+     *
+     * @return The species program as generated code.
+     */
+    public SpeciesJit getJitProgram() {
+        return speciesProgram.jit();
+    }
+
+    /**
+     * Get the profile of the species program, which counts how often each of
+     * its instructions runs when profiling is on.
+     *
+     * @return The profile, or null if ProgramProfile.ENABLED is false.
+     */
+    public ProgramProfile getProfile() {
+        return speciesProgram.profile();
+    }
+
+    /**
+     * Get the program of the species, which other species loaded from the
+     * same text share.
+     *
+     * @return The species program.
+     */
+    public SpeciesProgram getSpeciesProgram() {
+        return speciesProgram;
     }
 
     /**
@@ -194,6 +216,7 @@ public class Species {
      * @return A string representing the species program.
      */
     public String programToString() {
+        List<Instruction> program = speciesProgram.instructions();
         String textualRepresentation = "";
         textualRepresentation += "[";
         for (int i = 0; i < program.size(); i++) {
@@ -208,7 +231,8 @@ public class Species {
     }
 
     public ArrayList<Instruction> getProgram() {
-        return program;
+        // a copy, since the program is shared
+        return new ArrayList<>(speciesProgram.instructions());
     }
 
 }
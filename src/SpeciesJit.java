@@ -0,0 +1,228 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * This class represents a species program translated into generated code. Each
+ * instruction address becomes a method handle that runs the (optimized)
+ * program from that address: straight-line code and forward jumps are chained
+ * directly into one another, so every label starts a basic block, and only
+ * backward jumps return to a small dispatch loop. The whole program is combined into a single method
+ * handle, which HotSpot can inline and optimize like ordinary code.
+ *
+ * Every instruction is built from the same Creature operations the interpreter
+ * uses, so running a creature through the JIT gives exactly the same result.
+ * Like Creature.decide, the generated code stops at a terminating instruction
+ * and returns its action rather than taking it.
+ */
+public class SpeciesJit {
+
+    // sensing operations, each (Creature)boolean
+    private static final MethodHandle FRONT_EMPTY;
+    private static final MethodHandle FRONT_WALL;
+    private static final MethodHandle FRONT_SAME;
+    private static final MethodHandle FRONT_ENEMY;
+    private static final MethodHandle RANDOM_BRANCH;
+
+    // side effects of taken branches, each (Creature)void
+    private static final MethodHandle FACE_LEFT;
+    private static final MethodHandle FACE_RIGHT;
+
+    // terminating instructions, each (int next, Creature)int
+    private static final MethodHandle HOP;
+    private static final MethodHandle LEFT;
+    private static final MethodHandle RIGHT;
+
+    // (int target, int next, Creature)int
+    private static final MethodHandle INFECT;
+
+    // loop plumbing
+    private static final MethodHandle GET_COUNTER;
+    private static final MethodHandle RUNNING;
+    private static final MethodHandle RAN_OFF;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            MethodType sense = MethodType.methodType(boolean.class);
+            FRONT_EMPTY = lookup.findVirtual(Creature.class, "frontEmpty", sense);
+            FRONT_WALL = lookup.findVirtual(Creature.class, "frontWall", sense);
+            FRONT_SAME = lookup.findVirtual(Creature.class, "frontSame", sense);
+            FRONT_ENEMY = lookup.findVirtual(Creature.class, "frontEnemy", sense);
+            RANDOM_BRANCH = lookup.findVirtual(Creature.class, "randomBranch", sense);
+
+            MethodType effect = MethodType.methodType(void.class);
+            FACE_LEFT = lookup.findVirtual(Creature.class, "faceLeft", effect);
+            FACE_RIGHT = lookup.findVirtual(Creature.class, "faceRight", effect);
+
+            MethodType action = MethodType.methodType(int.class, int.class, Creature.class);
+            HOP = lookup.findStatic(SpeciesJit.class, "hop", action);
+            LEFT = lookup.findStatic(SpeciesJit.class, "left", action);
+            RIGHT = lookup.findStatic(SpeciesJit.class, "right", action);
+            INFECT = lookup.findStatic(SpeciesJit.class, "infect",
+                MethodType.methodType(int.class, int.class, int.class, Creature.class));
+
+            GET_COUNTER = lookup.findVirtual(Creature.class, "getCounter",
+                MethodType.methodType(int.class));
+            RUNNING = lookup.findStatic(SpeciesJit.class, "running",
+                MethodType.methodType(boolean.class, int.class));
+            RAN_OFF = lookup.findStatic(SpeciesJit.class, "ranOff",
+                MethodType.methodType(int.class, Creature.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // decides one turn of a creature: (Creature)int, the complement of the action
+    private final MethodHandle turn;
+
+    /**
+     * Generate code for the given compiled program.
+     *
+     * @param program The compiled species program.
+     */
+    public SpeciesJit(CompiledProgram program) {
+        int size = program.size();
+
+        // entries[i] runs the program from address i, and returns either the
+        // address to continue from, or the complement of the turn's action,
+        // which is negative; entries[size] is past the end
+        MethodHandle[] entries = new MethodHandle[size + 1];
+        entries[size] = RAN_OFF;
+        for (int i = size - 1; i >= 0; i--) {
+            entries[i] = compileInstruction(program, i, entries);
+        }
+
+        if (size == 0) {
+            turn = RAN_OFF;
+            return;
+        }
+
+        // the dispatch loop: continue from the creature's counter until an
+        // action is returned
+        MethodHandle[] cases = new MethodHandle[size];
+        for (int i = 0; i < size; i++) {
+            cases[i] = MethodHandles.dropArguments(entries[i], 0, int.class);
+        }
+        MethodHandle dispatch = MethodHandles.tableSwitch(
+            MethodHandles.dropArguments(RAN_OFF, 0, int.class), cases);
+        MethodHandle running = MethodHandles.dropArguments(RUNNING, 1, Creature.class);
+        MethodHandle loop = MethodHandles.whileLoop(GET_COUNTER, running, dispatch);
+        turn = loop;
+    }
+
+    /**
+     * Run the given creature until it reaches a terminating instruction, and
+     * return that instruction's action, encoded as by Creature.decide.
+     *
+     * @param creature The creature whose turn it is.
+     * @return The encoded action that ends the creature's turn.
+     */
+    public int run(Creature creature) {
+        try {
+            return ~(int) turn.invokeExact(creature);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Build the entry handle of the instruction at the given address. All
+     * entries after it have already been built.
+     */
+    private static MethodHandle compileInstruction(CompiledProgram program,
+            int address, MethodHandle[] entries) {
+        int next = program.next(address);
+        int target = program.target(address);
+        MethodHandle fallThrough = jump(address, next, entries);
+
+        switch (program.opcode(address)) {
+            case CompiledProgram.HOP:
+                return MethodHandles.insertArguments(HOP, 0, next);
+            case CompiledProgram.LEFT:
+                return MethodHandles.insertArguments(LEFT, 0, next);
+            case CompiledProgram.RIGHT:
+                return MethodHandles.insertArguments(RIGHT, 0, next);
+            case CompiledProgram.INFECT:
+                return MethodHandles.insertArguments(INFECT, 0, target, next);
+            case CompiledProgram.IFEMPTY:
+                return MethodHandles.guardWithTest(FRONT_EMPTY,
+                    jump(address, target, entries), fallThrough);
+            case CompiledProgram.IFWALL:
+                return MethodHandles.guardWithTest(FRONT_WALL,
+                    MethodHandles.foldArguments(jump(address, target, entries), FACE_LEFT),
+                    fallThrough);
+            case CompiledProgram.IFSAME:
+                return MethodHandles.guardWithTest(FRONT_SAME,
+                    MethodHandles.foldArguments(jump(address, target, entries), FACE_RIGHT),
+                    fallThrough);
+            case CompiledProgram.IFENEMY:
+                return MethodHandles.guardWithTest(FRONT_ENEMY,
+                    jump(address, target, entries), fallThrough);
+            case CompiledProgram.IFRANDOM:
+                return MethodHandles.guardWithTest(RANDOM_BRANCH,
+                    jump(address, target, entries), fallThrough);
+            case CompiledProgram.SENSE_HOP: {
+                MethodHandle other = jump(address, program.alternate(address), entries);
+                MethodHandle hop = MethodHandles.insertArguments(HOP, 0, next);
+                MethodHandle same = MethodHandles.guardWithTest(FRONT_SAME,
+                    MethodHandles.foldArguments(other, FACE_RIGHT), hop);
+                MethodHandle wall = MethodHandles.guardWithTest(FRONT_WALL,
+                    MethodHandles.foldArguments(other, FACE_LEFT), same);
+                return MethodHandles.guardWithTest(FRONT_ENEMY,
+                    jump(address, target, entries), wall);
+            }
+            case CompiledProgram.GO:
+                return jump(address, target, entries);
+            case CompiledProgram.LABEL:
+                return fallThrough;
+            default:
+                throw new IllegalStateException(
+                    "bad opcode " + program.opcode(address) + " at address " + address);
+        }
+    }
+
+    /*
+     * Build a jump from the given address to the given target. A forward jump
+     * continues straight into the target block; a backward jump returns the
+     * target to the dispatch loop.
+     */
+    private static MethodHandle jump(int address, int target, MethodHandle[] entries) {
+        if (target > address) {
+            return entries[target];
+        }
+        return MethodHandles.dropArguments(
+            MethodHandles.constant(int.class, target), 0, Creature.class);
+    }
+
+    private static int hop(int next, Creature creature) {
+        creature.setCounter(next);
+        return ~Creature.ACT_HOP;
+    }
+
+    private static int left(int next, Creature creature) {
+        creature.setCounter(next);
+        return ~Creature.ACT_LEFT;
+    }
+
+    private static int right(int next, Creature creature) {
+        creature.setCounter(next);
+        return ~Creature.ACT_RIGHT;
+    }
+
+    private static int infect(int target, int next, Creature creature) {
+        creature.setCounter(next);
+        return ~Creature.infectAction(target);
+    }
+
+    private static boolean running(int address) {
+        return address >= 0;
+    }
+
+    private static int ranOff(Creature creature) {
+        throw new IllegalStateException("program ran past its last instruction");
+    }
+
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * This class represents a species program as loaded from a species file: its
+ * name, its instructions, and their compiled and optimized form, checked
+ * once for loops that never end a turn. A program is immutable and has
+ * nothing to do with how its creatures are shown, so one program can be
+ * shared by every Species made from the same file, whatever their colors,
+ * and by any number of matches at once. ProgramCache keeps the programs
+ * already loaded, by the hash of their text.
+ */
+public class SpeciesProgram {
+
+    // the name of the species, from the first line of the file
+    private final String name;
+
+    // the parsed instructions, and their compiled form
+    private final List<Instruction> instructions;
+    private final CompiledProgram compiled;
+
+    // the generated code, made when first needed
+    private volatile SpeciesJit jit;
+
+    // the profile of the program, if profiling is on
+    private final ProgramProfile profile;
+
+    /**
+     * Parse and compile the text of a species file. Throws a
+     * BadSpeciesException if the text is not a well-formed program.
+     *
+     * @param text The text of a species file.
+     */
+    public SpeciesProgram(String text) {
+        ArrayList<Instruction> parsed = new ArrayList<>();
+        this.name = parse(new Scanner(text), parsed);
+        if (name == null) {
+            throw new Species.BadSpeciesException("species file is empty");
+        }
+        this.instructions = Collections.unmodifiableList(parsed);
+
+        // resolve every label once, so that running the program never searches
+        CompiledProgram unoptimized = new CompiledProgram(instructions);
+        for (ProgramOptimizer.Cycle cycle : ProgramOptimizer.nonTerminatingCycles(unoptimized)) {
+            if (!cycle.canExit()) {
+                throw new Species.BadSpeciesException("instructions at addresses "
+                    + Arrays.toString(cycle.addresses())
+                    + " loop forever without a hop, left, right or infect");
+            }
+        }
+        this.compiled = ProgramOptimizer.optimize(unoptimized);
+        if (ExecutionEngine.current() == ExecutionEngine.JIT) {
+            this.jit = new SpeciesJit(compiled);
+        }
+        this.profile = ProgramProfile.ENABLED ? new ProgramProfile(compiled) : null;
+    }
+
+    /**
+     * Create a program from parts already parsed, checked and compiled, as
+     * loaded by BinarySpecies.
+     *
+     * @param name The name of the species.
+     * @param instructions The instructions, as parsed.
+     * @param compiled The compiled and optimized form of the instructions.
+     */
+    SpeciesProgram(String name, List<Instruction> instructions, CompiledProgram compiled) {
+        this.name = name;
+        this.instructions = Collections.unmodifiableList(instructions);
+        this.compiled = compiled;
+        if (ExecutionEngine.current() == ExecutionEngine.JIT) {
+            this.jit = new SpeciesJit(compiled);
+        }
+        this.profile = ProgramProfile.ENABLED ? new ProgramProfile(compiled) : null;
+    }
+
+    /**
+     * Read the lines of a species file: its name on the first line, then one
+     * instruction per line, skipping blank lines and # comments.
+     *
+     * @param input The lines to read.
+     * @param storage The list to add the instructions to.
+     * @return The name of the species, or null if there are no lines.
+     */
+    static String parse(Scanner input, List<Instruction> storage) {
+        String name = null;
+        while (input.hasNext()) {
+
+            // get the next line in the file
+            String line = input.nextLine();
+
+            // the first line of the file is the name of the species
+            if (name == null) {
+                name = line;
+                continue;
+            }
+
+            // ignore the lines that are blank or are comments
+            if (line.startsWith("#") || line.equals("")) {
+                continue;
+            }
+
+            // split the line into an array
+            String[] splitLine = line.split(" ");
+
+            // make an opcode out of the first element of the split line
+            Opcode speciesOpcode = Opcode.fromString(splitLine[0]);
+
+            // check to see if the line a label
+            if (splitLine[0].charAt(splitLine[0].length() - 1) == ':') {
+                // remove the colon from the end of the label
+                String label = splitLine[0].substring(0, splitLine[0].length() - 1);
+                storage.add(new Instruction(Opcode.LABEL, label));
+            } else if (splitLine.length == 1) {
+                // an opcode alone
+                storage.add(new Instruction(speciesOpcode));
+            } else if (splitLine.length == 2) {
+                // an opcode and its label
+                storage.add(new Instruction(speciesOpcode, splitLine[1]));
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Get the name of the species.
+     *
+     * @return The species name.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Get the instructions of the program, as parsed.
+     *
+     * @return An unmodifiable list of the instructions.
+     */
+    public List<Instruction> instructions() {
+        return instructions;
+    }
+
+    /**
+     * Get the compiled and optimized form of the program.
+     *
+     * @return The compiled program.
+     */
+    public CompiledProgram compiled() {
+        return compiled;
+    }
+
+    /**
+     * Get the generated code for the program. The code is generated when the
+     * program is loaded if the JIT engine is selected, or otherwise the first
+     * time it is needed.
+     *
+     * @return The program as generated code.
+     */
+    public SpeciesJit jit() {
+        SpeciesJit result = jit;
+        if (result == null) {
+            result = new SpeciesJit(compiled);
+            jit = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the profile of the program.
+     *
+     * @return The profile, or null if ProgramProfile.ENABLED is false.
+     */
+    public ProgramProfile profile() {
+        return profile;
+    }
+
+}
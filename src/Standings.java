@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents the standings of a tournament: for each species, the
+ * matches it played, won, drew and lost, the creatures it had left at the
+ * end of them, and an Elo rating.
+ *
+ * Within a match, every two species are scored against each other by
+ * survivors (see MatchResult.score), and their ratings move by K times the
+ * difference between that score and the one their ratings expected. Results
+ * must be added in a fixed order, such as the order the matches were
+ * scheduled in, for the ratings to come out the same every time.
+ */
+public class Standings {
+
+    /**
+     * The rating of a species before it has played.
+     */
+    public static final double INITIAL_RATING = 1500;
+
+    /**
+     * How far one match can move a rating.
+     */
+    public static final double K = 16;
+
+    // the species, and their totals so far
+    private final List<Species> species;
+    private final int[] matches;
+    private final int[] wins;
+    private final int[] draws;
+    private final int[] losses;
+    private final long[] survivors;
+    private final double[] ratings;
+
+    // every result added
+    private final ArrayList<MatchResult> results = new ArrayList<>();
+
+    /**
+     * Create empty standings for the given species.
+     *
+     * @param species The species of the tournament.
+     */
+    public Standings(List<Species> species) {
+        this.species = new ArrayList<>(species);
+        int n = species.size();
+        matches = new int[n];
+        wins = new int[n];
+        draws = new int[n];
+        losses = new int[n];
+        survivors = new long[n];
+        ratings = new double[n];
+        Arrays.fill(ratings, INITIAL_RATING);
+    }
+
+    /**
+     * Add the result of a match between some of the species.
+     *
+     * @param result The result.
+     */
+    public void add(MatchResult result) {
+        List<Species> playing = result.species();
+        int[] index = new int[playing.size()];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = species.indexOf(playing.get(i));
+            if (index[i] < 0) {
+                throw new IllegalArgumentException("species not in the tournament: "
+                    + playing.get(i).getName());
+            }
+        }
+        int winner = result.winner();
+        int most = 0;
+        for (int i = 0; i < index.length; i++) {
+            most = Math.max(most, result.survivors(i));
+        }
+        double[] change = new double[index.length];
+        for (int i = 0; i < index.length; i++) {
+            int s = index[i];
+            matches[s]++;
+            survivors[s] += result.survivors(i);
+            if (winner == i) {
+                wins[s]++;
+            } else if (winner < 0 && result.survivors(i) == most) {
+                draws[s]++;
+            } else {
+                losses[s]++;
+            }
+            for (int j = 0; j < index.length; j++) {
+                if (j != i) {
+                    double expected = 1 / (1 + Math.pow(10, (ratings[index[j]] - ratings[s]) / 400));
+                    change[i] += K * (result.score(i, j) - expected);
+                }
+            }
+        }
+        for (int i = 0; i < index.length; i++) {
+            ratings[index[i]] += change[i];
+        }
+        results.add(result);
+    }
+
+    /**
+     * Get the species of the tournament.
+     *
+     * @return An unmodifiable list of the species.
+     */
+    public List<Species> species() {
+        return Collections.unmodifiableList(species);
+    }
+
+    /**
+     * Get every result added, in the order they were added.
+     *
+     * @return An unmodifiable list of the results.
+     */
+    public List<MatchResult> results() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Get the number of matches a species played.
+     *
+     * @param index The index of the species in species().
+     * @return The number of matches.
+     */
+    public int matches(int index) {
+        return matches[index];
+    }
+
+    /**
+     * Get the number of matches a species won outright.
+     *
+     * @param index The index of the species in species().
+     * @return The number of wins.
+     */
+    public int wins(int index) {
+        return wins[index];
+    }
+
+    /**
+     * Get the number of drawn matches in which a species shared the most
+     * survivors.
+     *
+     * @param index The index of the species in species().
+     * @return The number of draws.
+     */
+    public int draws(int index) {
+        return draws[index];
+    }
+
+    /**
+     * Get the number of matches a species lost.
+     *
+     * @param index The index of the species in species().
+     * @return The number of losses.
+     */
+    public int losses(int index) {
+        return losses[index];
+    }
+
+    /**
+     * Get the total number of creatures a species had left at the end of its
+     * matches.
+     *
+     * @param index The index of the species in species().
+     * @return The number of survivors.
+     */
+    public long survivors(int index) {
+        return survivors[index];
+    }
+
+    /**
+     * Get the Elo rating of a species.
+     *
+     * @param index The index of the species in species().
+     * @return The rating.
+     */
+    public double rating(int index) {
+        return ratings[index];
+    }
+
+    /**
+     * Get a table of the standings, one line per species, highest rated
+     * first.
+     *
+     * @return The table.
+     */
+    @Override
+    public String toString() {
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < species.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Double.compare(ratings[b], ratings[a]));
+        StringBuilder table = new StringBuilder(String.format("%-12s %8s %6s %6s %6s %10s %7s%n",
+            "Species", "Matches", "Wins", "Draws", "Losses", "Survivors", "Rating"));
+        for (int i : order) {
+            table.append(String.format("%-12s %8d %6d %6d %6d %10d %7.0f%n",
+                species.get(i).getName(), matches[i], wins[i], draws[i], losses[i],
+                survivors[i], ratings[i]));
+        }
+        return table.toString();
+    }
+
+}
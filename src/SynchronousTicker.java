@@ -0,0 +1,247 @@
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * This class runs a simulation in synchronous ticks. In the sequential loop of
+ * Driver, each creature sees the hops and infections of the creatures that
+ * went before it in the tick. Here, every creature instead decides its action
+ * against the world as it was at the start of the tick, and all the actions
+ * are then taken together:
+ * <ul>
+ * <li>every turn is taken;</li>
+ * <li>a creature infected by several others at once is infected by one of
+ * them, chosen at random, and infections spread the species the infectors
+ * had at the start of the tick;</li>
+ * <li>a hop succeeds only if its square was empty at the start of the tick
+ * and no other creature hops into the same square.</li>
+ * </ul>
+ *
+ * Since nothing in the world changes while creatures decide, the decisions
+ * can be made in parallel, and the result of a tick depends only on the
+ * world's seed, never on the number of threads.
+ */
+public class SynchronousTicker {
+
+    // the ranges of actions short enough to sort by insertion
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    // the world and every creature in it
+    private final World world;
+    private final Creature[] creatures;
+
+    // whether decisions are made on the common fork/join pool
+    private final boolean parallel;
+
+    // the action each creature decided on this tick
+    private final int[] actions;
+
+    // hops and infections of this tick: the index of the square each
+    // changes, which may exceed an int in a large sparse world, and the
+    // index of the creature that acts
+    private final long[] hopSquares;
+    private final int[] hopCreatures;
+    private final long[] infectionSquares;
+    private final int[] infectionCreatures;
+
+    // the infections that take effect, and the species each one spreads
+    private final Creature[] victims;
+    private final Species[] infectingSpecies;
+    private final int[] infectingAddresses;
+
+    // the seed of the current tick's tie breaks
+    private long tickSeed;
+
+    /**
+     * Create a ticker for the given world and creatures that decides in
+     * parallel.
+     *
+     * @param world The world the creatures live in.
+     * @param creatures Every creature of the world.
+     */
+    public SynchronousTicker(World world, List<Creature> creatures) {
+        this(world, creatures, true);
+    }
+
+    /**
+     * Create a ticker for the given world and creatures.
+     *
+     * @param world The world the creatures live in.
+     * @param creatures Every creature of the world.
+     * @param parallel Whether to decide on many threads.
+     */
+    public SynchronousTicker(World world, List<Creature> creatures, boolean parallel) {
+        this.world = world;
+        this.creatures = creatures.toArray(new Creature[0]);
+        this.parallel = parallel;
+        int count = this.creatures.length;
+        this.actions = new int[count];
+        this.hopSquares = new long[count];
+        this.hopCreatures = new int[count];
+        this.infectionSquares = new long[count];
+        this.infectionCreatures = new int[count];
+        this.victims = new Creature[count];
+        this.infectingSpecies = new Species[count];
+        this.infectingAddresses = new int[count];
+    }
+
+    /**
+     * Give every creature one turn.
+     */
+    public void tick() {
+        tickSeed = world.random().nextLong();
+
+        // decide: each creature changes only its own counter, direction and
+        // random stream, and only reads the world
+        IntStream decisions = IntStream.range(0, creatures.length);
+        if (parallel) {
+            decisions = decisions.parallel();
+        }
+        decisions.forEach(i -> actions[i] = creatures[i].decide());
+
+        // resolve: sort the actions by kind and by the square they change
+        int hopCount = 0;
+        int infectionCount = 0;
+        for (int i = 0; i < creatures.length; i++) {
+            Creature creature = creatures[i];
+            creature.reportTurn();
+            int action = actions[i];
+            int kind = action & 3;
+            if (kind == Creature.ACT_LEFT || kind == Creature.ACT_RIGHT) {
+                creature.perform(action);
+                continue;
+            }
+            int x = creature.actionX(action);
+            int y = creature.actionY(action);
+            if (kind == Creature.ACT_HOP) {
+                if (world.inBounds(x, y) && !world.occupied(x, y)) {
+                    hopSquares[hopCount] = square(x, y);
+                    hopCreatures[hopCount++] = i;
+                }
+            } else if (world.squareAt(x, y) > World.EMPTY) {
+                infectionSquares[infectionCount] = square(x, y);
+                infectionCreatures[infectionCount++] = i;
+            }
+        }
+
+        resolveInfections(infectionCount);
+        resolveHops(hopCount);
+    }
+
+    /*
+     * Pick one infector for every infected square, then infect them all with
+     * the species their infectors had before any infection of this tick.
+     */
+    private void resolveInfections(int count) {
+        sort(infectionSquares, infectionCreatures, 0, count);
+        int winners = 0;
+        for (int start = 0; start < count; ) {
+            int end = start + 1;
+            int best = infectionCreatures[start];
+            long bestDraw = draw(best);
+            while (end < count && infectionSquares[end] == infectionSquares[start]) {
+                int candidate = infectionCreatures[end];
+                long candidateDraw = draw(candidate);
+                if (candidateDraw > bestDraw) {
+                    best = candidate;
+                    bestDraw = candidateDraw;
+                }
+                end++;
+            }
+            Creature infector = creatures[best];
+            victims[winners] = world.get(infector.actionX(actions[best]),
+                infector.actionY(actions[best]));
+            infectingSpecies[winners] = infector.species;
+            infectingAddresses[winners] = actions[best] >>> 2;
+            winners++;
+            start = end;
+        }
+        for (int i = 0; i < winners; i++) {
+            victims[i].infectedBy(infectingSpecies[i], infectingAddresses[i]);
+            victims[i] = null;
+            infectingSpecies[i] = null;
+        }
+    }
+
+    // move every creature that is alone in hopping into its square
+    private void resolveHops(int count) {
+        sort(hopSquares, hopCreatures, 0, count);
+        for (int start = 0; start < count; ) {
+            int end = start + 1;
+            while (end < count && hopSquares[end] == hopSquares[start]) {
+                end++;
+            }
+            if (end == start + 1) {
+                creatures[hopCreatures[start]].hop();
+            }
+            start = end;
+        }
+    }
+
+    // the index of the square at the given coordinates
+    private long square(int x, int y) {
+        return (long) y * world.width() + x;
+    }
+
+    /*
+     * Sort the actions in [from, to) by square, and the actions on one square
+     * by creature, moving each creature index along with its square. Every
+     * creature acts at most once, so no two actions compare equal and the
+     * order is the same on every run.
+     */
+    private static void sort(long[] squares, int[] creatures, int from, int to) {
+        while (to - from > INSERTION_SORT_SIZE) {
+            int middle = (from + to) >>> 1;
+            long pivotSquare = squares[middle];
+            int pivotCreature = creatures[middle];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (before(squares[i], creatures[i], pivotSquare, pivotCreature)) {
+                    i++;
+                }
+                while (before(pivotSquare, pivotCreature, squares[j], creatures[j])) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(squares, creatures, i++, j--);
+                }
+            }
+            // recurse into the smaller half and loop on the larger, so the
+            // stack stays shallow
+            if (j + 1 - from < to - i) {
+                sort(squares, creatures, from, j + 1);
+                from = i;
+            } else {
+                sort(squares, creatures, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from
+                    && before(squares[j], creatures[j], squares[j - 1], creatures[j - 1]); j--) {
+                swap(squares, creatures, j, j - 1);
+            }
+        }
+    }
+
+    // whether one action sorts before another
+    private static boolean before(long square, int creature, long otherSquare, int otherCreature) {
+        return square < otherSquare || (square == otherSquare && creature < otherCreature);
+    }
+
+    // swap two actions
+    private static void swap(long[] squares, int[] creatures, int i, int j) {
+        long square = squares[i];
+        squares[i] = squares[j];
+        squares[j] = square;
+        int creature = creatures[i];
+        creatures[i] = creatures[j];
+        creatures[j] = creature;
+    }
+
+    // the tie break of the given creature on this tick
+    private long draw(int creature) {
+        return WorldRandom.mix64(tickSeed + creature * WorldRandom.GAMMA);
+    }
+
+}
@@ -0,0 +1,121 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class runs a simulation, or anything else that advances a tick at a
+ * time such as a ReplayPlayer, at a steady pace: a fixed number of ticks per
+ * second, times a speed multiplier that can be changed while it runs. Ticks
+ * are due at fixed times, so the pace does not drift however long each tick
+ * takes; a run that falls far behind, because ticks are slower than the pace
+ * asks, skips ahead instead of trying to catch up with a burst of ticks.
+ *
+ * A speed of UNTHROTTLED runs ticks back to back, as fast as possible.
+ */
+public class TickScheduler {
+
+    /**
+     * The speed that runs ticks without waiting between them.
+     */
+    public static final double UNTHROTTLED = Double.POSITIVE_INFINITY;
+
+    // how far behind a run may fall before it skips ahead
+    private static final long MAX_LAG_NANOS = 250_000_000L;
+
+    // runs one tick
+    private final Runnable tick;
+
+    // the number of ticks per second at a speed of 1
+    private final double ticksPerSecond;
+
+    // the current speed multiplier; may be changed from any thread
+    private volatile double speed = 1;
+
+    // whether the run should stop at the next tick; may be set from any thread
+    private volatile boolean stopped = false;
+
+    /**
+     * Create a scheduler for the given simulation.
+     *
+     * @param simulation The simulation to run.
+     * @param ticksPerSecond The number of ticks per second at a speed of 1.
+     */
+    public TickScheduler(Simulation simulation, double ticksPerSecond) {
+        this(simulation::tick, ticksPerSecond);
+    }
+
+    /**
+     * Create a scheduler that runs the given action once a tick.
+     *
+     * @param tick Runs one tick.
+     * @param ticksPerSecond The number of ticks per second at a speed of 1.
+     */
+    public TickScheduler(Runnable tick, double ticksPerSecond) {
+        if (!(ticksPerSecond > 0)) {
+            throw new IllegalArgumentException("ticks per second must be >0");
+        }
+        this.tick = tick;
+        this.ticksPerSecond = ticksPerSecond;
+    }
+
+    /**
+     * Get the speed multiplier.
+     *
+     * @return The speed, or UNTHROTTLED.
+     */
+    public double speed() {
+        return speed;
+    }
+
+    /**
+     * Set the speed multiplier. This may be called from any thread, and takes
+     * effect from the next tick.
+     *
+     * @param speed The new speed, which is positive, or UNTHROTTLED.
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be >0");
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Make a running scheduler return after its current tick. This may be
+     * called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Run ticks at the scheduled pace until the given number of ticks have
+     * run or stop is called.
+     *
+     * @param count The number of ticks to run, or Long.MAX_VALUE to run until
+     *          stopped.
+     */
+    public void run(long count) {
+        stopped = false;
+        long due = System.nanoTime();
+        for (long i = 0; i < count && !stopped; i++) {
+            double currentSpeed = speed;
+            if (currentSpeed != UNTHROTTLED) {
+                long now = System.nanoTime();
+                if (now - due > MAX_LAG_NANOS) {
+                    due = now;
+                }
+                while (due - now > 0 && !stopped) {
+                    LockSupport.parkNanos(due - now);
+                    now = System.nanoTime();
+                }
+                if (stopped) {
+                    break;
+                }
+                due += (long) (1e9 / (ticksPerSecond * currentSpeed));
+            } else {
+                due = System.nanoTime();
+            }
+            tick.run();
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class represents a count of the creatures of each species in every
+ * block of a world, kept up to date as creatures are placed, hop and are
+ * infected. The smallest blocks are 2^blockShift squares on a side; they form
+ * level 0. Each further level has blocks twice as large on a side, up to a
+ * level with a single block covering the whole world. A change updates one
+ * block per level, so any level can be read without scanning the board.
+ *
+ * Counts are updated atomically, so creatures may run on several threads (as
+ * with ParallelTicker) while the counts are read from another, such as the
+ * Swing thread.
+ */
+public class TileCounts {
+
+    // the log2 of the width of a level 0 block
+    private final int blockShift;
+
+    // the number of blocks across and down each level
+    private final int[] blocksAcross;
+    private final int[] blocksDown;
+
+    /**
+     * The counts of every level. The counts of one block take stride ints,
+     * the total first and then one for each species id. Replaced as a whole
+     * when a new species needs room.
+     */
+    private static class Counts {
+        private final AtomicIntegerArray[] levels;
+        private final int stride;
+
+        private Counts(AtomicIntegerArray[] levels, int stride) {
+            this.levels = levels;
+            this.stride = stride;
+        }
+    }
+
+    // the current counts
+    private volatile Counts counts;
+
+    /**
+     * Create counts, all zero, for a world of the given size.
+     *
+     * @param width The width of the world.
+     * @param height The height of the world.
+     * @param blockShift The log2 of the width of the smallest blocks.
+     */
+    public TileCounts(int width, int height, int blockShift) {
+        if (blockShift < 0 || blockShift > 30) {
+            throw new IllegalArgumentException("block shift must be from 0 to 30");
+        }
+        this.blockShift = blockShift;
+        int levels = 1;
+        while ((width - 1) >> (blockShift + levels - 1) > 0
+                || (height - 1) >> (blockShift + levels - 1) > 0) {
+            levels++;
+        }
+        blocksAcross = new int[levels];
+        blocksDown = new int[levels];
+        AtomicIntegerArray[] levelCounts = new AtomicIntegerArray[levels];
+        int stride = 4;
+        for (int level = 0; level < levels; level++) {
+            int shift = blockShift + level;
+            blocksAcross[level] = ((width - 1) >> shift) + 1;
+            blocksDown[level] = ((height - 1) >> shift) + 1;
+            levelCounts[level] = new AtomicIntegerArray(blocksAcross[level] * blocksDown[level] * stride);
+        }
+        counts = new Counts(levelCounts, stride);
+    }
+
+    /**
+     * Get the log2 of the width of the smallest blocks.
+     *
+     * @return The block shift.
+     */
+    public int blockShift() {
+        return blockShift;
+    }
+
+    /**
+     * Get the number of levels.
+     *
+     * @return The number of levels; the last has one block.
+     */
+    public int levels() {
+        return blocksAcross.length;
+    }
+
+    /**
+     * Get the width and height of the blocks of a level, in squares.
+     *
+     * @param level The level.
+     * @return The block size.
+     */
+    public int blockSize(int level) {
+        return 1 << (blockShift + level);
+    }
+
+    /**
+     * Get the number of blocks across a level.
+     *
+     * @param level The level.
+     * @return The number of blocks in a row.
+     */
+    public int blocksAcross(int level) {
+        return blocksAcross[level];
+    }
+
+    /**
+     * Get the number of blocks down a level.
+     *
+     * @param level The level.
+     * @return The number of blocks in a column.
+     */
+    public int blocksDown(int level) {
+        return blocksDown[level];
+    }
+
+    /**
+     * Get the number of creatures of a species in a block.
+     *
+     * @param level The level of the block.
+     * @param blockX The column of the block.
+     * @param blockY The row of the block.
+     * @param speciesId The world's id of the species.
+     * @return The number of creatures.
+     */
+    public int count(int level, int blockX, int blockY, short speciesId) {
+        Counts current = counts;
+        if (speciesId >= current.stride) {
+            return 0;
+        }
+        return current.levels[level].get(index(level, blockX, blockY, current.stride) + speciesId);
+    }
+
+    /**
+     * Get the number of creatures in a block.
+     *
+     * @param level The level of the block.
+     * @param blockX The column of the block.
+     * @param blockY The row of the block.
+     * @return The number of creatures.
+     */
+    public int total(int level, int blockX, int blockY) {
+        Counts current = counts;
+        return current.levels[level].get(index(level, blockX, blockY, current.stride));
+    }
+
+    /**
+     * Get the species with the most creatures in a block. Ties go to the
+     * species with the lowest id.
+     *
+     * @param level The level of the block.
+     * @param blockX The column of the block.
+     * @param blockY The row of the block.
+     * @return The world's id of the species, or World.EMPTY if the block has
+     *         no creatures.
+     */
+    public short dominant(int level, int blockX, int blockY) {
+        Counts current = counts;
+        AtomicIntegerArray levelCounts = current.levels[level];
+        int currentStride = current.stride;
+        int base = index(level, blockX, blockY, currentStride);
+        if (levelCounts.get(base) == 0) {
+            return World.EMPTY;
+        }
+        short best = World.EMPTY;
+        int bestCount = 0;
+        for (int id = 1; id < currentStride; id++) {
+            int count = levelCounts.get(base + id);
+            if (count > bestCount) {
+                best = (short) id;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Add a number of creatures of a species at a square.
+     *
+     * @param x The x coordinate of the square.
+     * @param y The y coordinate of the square.
+     * @param speciesId The world's id of the species.
+     * @param delta The number of creatures added, or removed if negative.
+     */
+    public void add(int x, int y, short speciesId, int delta) {
+        Counts current = counts;
+        AtomicIntegerArray[] levels = current.levels;
+        int currentStride = current.stride;
+        for (int level = 0; level < levels.length; level++) {
+            int shift = blockShift + level;
+            int base = index(level, x >> shift, y >> shift, currentStride);
+            levels[level].getAndAdd(base, delta);
+            levels[level].getAndAdd(base + speciesId, delta);
+        }
+    }
+
+    /**
+     * Move a creature of a species from one square to another.
+     *
+     * @param fromX The x coordinate it moves from.
+     * @param fromY The y coordinate it moves from.
+     * @param toX The x coordinate it moves to.
+     * @param toY The y coordinate it moves to.
+     * @param speciesId The world's id of the species.
+     */
+    public void move(int fromX, int fromY, int toX, int toY, short speciesId) {
+        Counts current = counts;
+        AtomicIntegerArray[] levels = current.levels;
+        int currentStride = current.stride;
+        for (int level = 0; level < levels.length; level++) {
+            int shift = blockShift + level;
+            int fromBase = index(level, fromX >> shift, fromY >> shift, currentStride);
+            int toBase = index(level, toX >> shift, toY >> shift, currentStride);
+            if (fromBase == toBase) {
+                // both squares are in the same block at every larger level
+                return;
+            }
+            levels[level].getAndAdd(fromBase, -1);
+            levels[level].getAndAdd(fromBase + speciesId, -1);
+            levels[level].getAndAdd(toBase, 1);
+            levels[level].getAndAdd(toBase + speciesId, 1);
+        }
+    }
+
+    /**
+     * Make room for the counts of a species id. The world calls this when it
+     * sees a new species, before any creature of it is counted, and never
+     * while creatures are running on other threads.
+     *
+     * @param speciesId The world's id of the species.
+     */
+    void ensureSpecies(short speciesId) {
+        Counts old = counts;
+        if (speciesId < old.stride) {
+            return;
+        }
+        int newStride = old.stride;
+        while (speciesId >= newStride) {
+            newStride *= 2;
+        }
+        AtomicIntegerArray[] grown = new AtomicIntegerArray[old.levels.length];
+        for (int level = 0; level < grown.length; level++) {
+            int blocks = blocksAcross[level] * blocksDown[level];
+            grown[level] = new AtomicIntegerArray(blocks * newStride);
+            for (int block = 0; block < blocks; block++) {
+                for (int i = 0; i < old.stride; i++) {
+                    grown[level].set(block * newStride + i, old.levels[level].get(block * old.stride + i));
+                }
+            }
+        }
+        counts = new Counts(grown, newStride);
+    }
+
+    // the index of the first count of a block
+    private int index(int level, int blockX, int blockY, int currentStride) {
+        return (blockY * blocksAcross[level] + blockX) * currentStride;
+    }
+
+}
@@ -0,0 +1,433 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class represents a tournament between species: every pairing of two
+ * species (or, in a free-for-all, all of them together) plays a number of
+ * headless matches, each in a world with its own seed, on a pool of threads.
+ * The results are gathered into Standings.
+ *
+ * The seed of every match comes from the tournament's seed and the match's
+ * place in the schedule, and results are added to the standings in schedule
+ * order, so a tournament with the same seed and settings gives the same
+ * standings however many threads run it. In alternate matches of a pairing
+ * the species are placed in the opposite order, so neither always goes
+ * first.
+ *
+ * With early stopping, a round robin plays each pairing in rounds instead,
+ * and after each round a SequentialTest on the pairing's scores decides
+ * whether one species is the stronger to the configured confidence. Decided
+ * pairings play no more matches; the matches a round would have given them
+ * go to the pairings still undecided, up to the repetition limit of each.
+ * The rounds and their matches do not depend on the number of threads, so
+ * the standings are still the same however many threads run them.
+ */
+public class Tournament {
+
+    /**
+     * Which species meet in each match.
+     */
+    public enum Format {
+        /** Every two species, in matches of their own. */
+        ROUND_ROBIN,
+        /** All the species at once. */
+        FREE_FOR_ALL
+    }
+
+    // the matches each pairing plays in a round of early stopping, for
+    // each pairing still undecided when the tournament starts
+    private static final int ROUND = 10;
+
+    // the species taking part
+    private final List<Species> species;
+
+    // the settings, which have defaults suited to quick matches
+    private Format format = Format.ROUND_ROBIN;
+    private int repetitions = 10;
+    private int size = 15;
+    private int creaturesPerSpecies = Driver.NUM_CREATURES;
+    private long ticks = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = new WorldRandom().seed();
+
+    // the confidence and margin of early stopping, or 0 if it is off
+    private double confidence;
+    private double margin;
+
+    // the matches played and pairings decided in the last run
+    private int played;
+    private int decided;
+
+    /**
+     * Create a tournament between the given species.
+     *
+     * @param species The species, at least two, all different.
+     */
+    public Tournament(List<Species> species) {
+        if (species.size() < 2) {
+            throw new IllegalArgumentException("a tournament needs two or more species");
+        }
+        this.species = new ArrayList<>(species);
+    }
+
+    /**
+     * Set which species meet in each match.
+     *
+     * @param format The format.
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Set the number of matches each pairing (or the free-for-all) plays.
+     *
+     * @param repetitions The number of matches, which is positive.
+     */
+    public void setRepetitions(int repetitions) {
+        if (repetitions <= 0) {
+            throw new IllegalArgumentException("repetitions must be >0");
+        }
+        this.repetitions = repetitions;
+    }
+
+    /**
+     * Set the width and height of the world of each match.
+     *
+     * @param size The size.
+     */
+    public void setWorldSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Set the number of creatures of each species in each match.
+     *
+     * @param creaturesPerSpecies The number of creatures.
+     */
+    public void setCreaturesPerSpecies(int creaturesPerSpecies) {
+        this.creaturesPerSpecies = creaturesPerSpecies;
+    }
+
+    /**
+     * Set the most ticks a match runs; it ends sooner if only one species is
+     * left.
+     *
+     * @param ticks The number of ticks.
+     */
+    public void setTicks(long ticks) {
+        this.ticks = ticks;
+    }
+
+    /**
+     * Set the number of threads that run matches.
+     *
+     * @param threads The number of threads, which is positive.
+     */
+    public void setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be >0");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Set the seed from which the seed of every match comes.
+     *
+     * @param seed The seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Stop playing a pairing of a round robin once a sequential test decides
+     * which species is the stronger, and give its matches to the pairings
+     * still undecided. Early stopping has no effect on a free-for-all.
+     *
+     * @param confidence The chance of deciding a pairing correctly, between
+     *        0.5 and 1, or 0 to play every repetition of every pairing.
+     * @param margin How far from an even score counts as a real difference,
+     *        between 0 and 0.5; pairings closer than this play every
+     *        repetition.
+     */
+    public void setEarlyStopping(double confidence, double margin) {
+        if (confidence != 0) {
+            SequentialTest.check(confidence, margin);
+        }
+        this.confidence = confidence;
+        this.margin = margin;
+    }
+
+    /**
+     * Get the seed from which the seed of every match comes.
+     *
+     * @return The seed.
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Get the species that meet in each group of matches: each pairing for a
+     * round robin, or all the species for a free-for-all.
+     *
+     * @return The groups, in schedule order.
+     */
+    public List<List<Species>> groups() {
+        ArrayList<List<Species>> groups = new ArrayList<>();
+        if (format == Format.FREE_FOR_ALL) {
+            groups.add(Collections.unmodifiableList(species));
+        } else {
+            for (int i = 0; i < species.size(); i++) {
+                for (int j = i + 1; j < species.size(); j++) {
+                    groups.add(Collections.unmodifiableList(
+                        Arrays.asList(species.get(i), species.get(j))));
+                }
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Get a match of the schedule: a given repetition of a group.
+     *
+     * @param group The species of the group.
+     * @param groupIndex The index of the group in groups().
+     * @param repetition The repetition, from 0.
+     * @return The match.
+     */
+    Match match(List<Species> group, int groupIndex, int repetition) {
+        List<Species> placed = new ArrayList<>(group);
+        if (repetition % 2 == 1) {
+            Collections.reverse(placed);
+        }
+        long index = (long) groupIndex << 32 | repetition;
+        return new Match(placed, WorldRandom.mix64(seed + index * WorldRandom.GAMMA),
+            size, creaturesPerSpecies, ticks);
+    }
+
+    /**
+     * Get every match of the tournament, in schedule order: the repetitions
+     * of the first group, then those of the next, and so on.
+     *
+     * @return The matches.
+     */
+    public List<Match> schedule() {
+        ArrayList<Match> matches = new ArrayList<>();
+        List<List<Species>> groups = groups();
+        for (int g = 0; g < groups.size(); g++) {
+            for (int r = 0; r < repetitions; r++) {
+                matches.add(match(groups.get(g), g, r));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Run every match of the tournament, on the configured number of
+     * threads, and wait for them all to finish.
+     *
+     * @return The standings.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Standings run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Standings standings = new Standings(species);
+            decided = 0;
+            if (confidence == 0 || format == Format.FREE_FOR_ALL) {
+                run(pool, schedule(), standings);
+            } else {
+                runUntilDecided(pool, standings);
+            }
+            played = standings.results().size();
+            return standings;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the number of matches the last run played.
+     *
+     * @return The number of matches.
+     */
+    public int played() {
+        return played;
+    }
+
+    /**
+     * Get the number of matches the last run did not need to play, because
+     * early stopping decided their pairings sooner.
+     *
+     * @return The number of matches.
+     */
+    public int saved() {
+        return groups().size() * repetitions - played;
+    }
+
+    /**
+     * Get the number of pairings that early stopping decided in the last
+     * run; the others played every repetition.
+     *
+     * @return The number of pairings.
+     */
+    public int decided() {
+        return decided;
+    }
+
+    // play the pairings in rounds until each is decided or has played every
+    // repetition, giving each round's matches to the pairings still undecided
+    private void runUntilDecided(ExecutorService pool, Standings standings)
+            throws InterruptedException {
+        List<List<Species>> groups = groups();
+        SequentialTest[] tests = new SequentialTest[groups.size()];
+        int[] next = new int[groups.size()];
+        ArrayList<Integer> open = new ArrayList<>();
+        for (int g = 0; g < groups.size(); g++) {
+            tests[g] = new SequentialTest(confidence, margin);
+            open.add(g);
+        }
+        int budget = groups.size() * ROUND;
+        while (!open.isEmpty()) {
+            int share = (budget + open.size() - 1) / open.size();
+            ArrayList<Match> round = new ArrayList<>();
+            ArrayList<Integer> roundGroups = new ArrayList<>();
+            for (int g : open) {
+                for (int k = 0; k < share && next[g] < repetitions; k++) {
+                    round.add(match(groups.get(g), g, next[g]++));
+                    roundGroups.add(g);
+                }
+            }
+            List<MatchResult> results = run(pool, round, standings);
+            for (int i = 0; i < results.size(); i++) {
+                MatchResult result = results.get(i);
+                List<Species> group = groups.get(roundGroups.get(i));
+                tests[roundGroups.get(i)].add(result.score(result.species().indexOf(group.get(0)),
+                    result.species().indexOf(group.get(1))));
+            }
+            for (int i = open.size() - 1; i >= 0; i--) {
+                int g = open.get(i);
+                if (tests[g].decision() != 0) {
+                    decided++;
+                    open.remove(i);
+                } else if (next[g] == repetitions) {
+                    open.remove(i);
+                }
+            }
+        }
+    }
+
+    // run matches on the pool, and add their results to the standings in
+    // the order of the matches
+    private static List<MatchResult> run(ExecutorService pool, List<Match> matches,
+            Standings standings) throws InterruptedException {
+        ArrayList<Future<MatchResult>> futures = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            futures.add(pool.submit(match::run));
+        }
+        ArrayList<MatchResult> results = new ArrayList<>(matches.size());
+        for (Future<MatchResult> future : futures) {
+            MatchResult result = result(future);
+            standings.add(result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    // the result of a finished match, or the exception it threw
+    static MatchResult result(Future<MatchResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Run a tournament between the species files given as arguments, or
+     * every file in the species directory if there are none, and print the
+     * standings. The settings come from system properties:
+     * -Dbugfight.format=round-robin or free-for-all, -Dbugfight.repetitions,
+     * -Dbugfight.size, -Dbugfight.creatures, -Dbugfight.ticks,
+     * -Dbugfight.threads and -Dbugfight.seed, and -Dbugfight.confidence and
+     * -Dbugfight.margin (0.05 by default) to stop pairings early.
+     *
+     * @param args The species files.
+     * @throws InterruptedException If interrupted while running.
+     * @throws IOException If the species directory cannot be listed.
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        // the programs are loaded in parallel, each parsed once
+        List<SpeciesProgram> programs;
+        if (args.length > 0) {
+            ArrayList<Path> files = new ArrayList<>();
+            for (String arg : args) {
+                files.add(Paths.get(arg));
+            }
+            programs = ProgramCache.shared().loadAll(files);
+        } else if (Files.isDirectory(Paths.get("species"))) {
+            programs = ProgramCache.shared().loadDirectory(Paths.get("species"));
+        } else {
+            System.err.println("No species files given, and no species directory here");
+            return;
+        }
+        ArrayList<Species> species = new ArrayList<>();
+        for (SpeciesProgram program : programs) {
+            species.add(new Species(program, null));
+        }
+
+        Tournament tournament = new Tournament(species);
+        if (System.getProperty("bugfight.format", "round-robin").equals("free-for-all")) {
+            tournament.setFormat(Format.FREE_FOR_ALL);
+        }
+        tournament.setRepetitions(Integer.getInteger("bugfight.repetitions", 10));
+        tournament.setWorldSize(Integer.getInteger("bugfight.size", 15));
+        tournament.setCreaturesPerSpecies(Integer.getInteger("bugfight.creatures", Driver.NUM_CREATURES));
+        tournament.setTicks(Long.getLong("bugfight.ticks", 1000));
+        tournament.setThreads(Integer.getInteger("bugfight.threads",
+            Runtime.getRuntime().availableProcessors()));
+        tournament.setSeed(Long.getLong("bugfight.seed", tournament.seed()));
+        String confidence = System.getProperty("bugfight.confidence");
+        if (confidence != null) {
+            tournament.setEarlyStopping(Double.parseDouble(confidence),
+                Double.parseDouble(System.getProperty("bugfight.margin", "0.05")));
+        }
+        System.out.println("Seed: " + tournament.seed());
+
+        long start = System.nanoTime();
+        Standings standings = tournament.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.print(standings);
+        int played = tournament.played();
+        System.out.printf("%d matches in %.1f s (%.0f an hour)%n", played, seconds,
+            played * 3600 / seconds);
+        if (confidence != null) {
+            System.out.printf("Early stopping decided %d of %d pairings and saved %d matches%n",
+                tournament.decided(), tournament.groups().size(), tournament.saved());
+        }
+        if (ProgramProfile.ENABLED) {
+            for (Species s : species) {
+                System.out.print(s.getName() + ": " + s.getProfile());
+            }
+        }
+    }
+
+}
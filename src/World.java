@@ -1,18 +1,70 @@
-import java.util.Random;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * This class represents the two-dimensional world during a Darwin simulation.
  * Each position of the world may be populated either by nothing or by a single
  * creature.
+ *
+ * Alongside the board of creatures, the world keeps a compact copy of what is
+ * where, for sensing: an occupancy bitset with one long per 64 squares of a
+ * row, and a grid holding a small species id for every square, surrounded by
+ * a border of WALL squares. Any square next to an in-bounds square is part of
+ * this grid, so a creature can sense the square in front of it with a single
+ * array read and no bounds check.
+ *
+ * Subclasses may store the board differently (see SparseWorld) by overriding
+ * the methods that read and write it.
  */
 public class World {
 
-    // random position generation
-    private final Random rand = new Random();
+    /**
+     * The grid value of a square outside of the world.
+     */
+    public static final short WALL = -1;
+
+    /**
+     * The grid value of an unoccupied square.
+     */
+    public static final short EMPTY = 0;
+
+    // the source of all randomness in this world
+    private final WorldRandom rand;
 
-    // contents of the world
+    // told about every change to the world's creatures
+    private SimulationListener listener = SimulationListener.NONE;
+
+    // contents of the world, or null if a subclass stores the board
     private final Creature[][] board;
 
+    // size of the world
+    private final int width, height;
+
+    // one bit per square, set iff the square is occupied
+    private final long[] occupancy;
+
+    // the number of longs in each row of the occupancy bitset
+    private final int rowWords;
+
+    // the species id of every square, with a border of WALL squares; the
+    // square (x, y) is at (y + 1) * stride + x + 1
+    private final short[] squares;
+    private final int stride;
+
+    // the species of each species id, starting from id 1; copied on write,
+    // since species are added rarely and may be read from other threads
+    private final List<Species> species = new CopyOnWriteArrayList<>();
+    private final HashMap<Species, Short> speciesIds = new HashMap<>();
+
+    // the creatures of each species in this world for the Metrics, or null
+    // if they are not counted
+    private final Metrics.Population counted = Metrics.ENABLED ? Metrics.population(this) : null;
+
+    // the creatures of each species in each block, or null if not counted
+    private TileCounts tileCounts;
+
     /**
      * Create a new world consisting of width columns and height rows. Initially,
      * the world contains no creatures.
@@ -23,10 +75,106 @@ public class World {
      *          The height of the world.
      */
     public World(int width, int height) {
+        this(width, height, new WorldRandom());
+    }
+
+    /**
+     * Create a new world consisting of width columns and height rows, whose
+     * randomness comes from a generator with the given seed. Two worlds with the
+     * same seed, populated and run in the same way, behave identically.
+     * 
+     * @param width
+     *          The width of the world.
+     * @param height
+     *          The height of the world.
+     * @param seed
+     *          The seed of the world's random generator.
+     */
+    public World(int width, int height, long seed) {
+        this(width, height, new WorldRandom(seed));
+    }
+
+    // create a world using the given random generator
+    private World(int width, int height, WorldRandom rand) {
+        this(width, height, rand, true);
+    }
+
+    /**
+     * Create a new world of width columns and height rows. A subclass that
+     * stores the board itself passes false for dense, and must then override
+     * get, set, move, occupied, population and squareAt.
+     * 
+     * @param width
+     *          The width of the world.
+     * @param height
+     *          The height of the world.
+     * @param rand
+     *          The world's random generator.
+     * @param dense
+     *          Whether to allocate the board as arrays.
+     */
+    protected World(int width, int height, WorldRandom rand, boolean dense) {
         if (width <= 0 || height <= 0) {
             throw new IllegalArgumentException("width and height must be >0");
         }
+        this.rand = rand;
+        this.width = width;
+        this.height = height;
+        if (!dense) {
+            board = null;
+            rowWords = 0;
+            occupancy = null;
+            stride = 0;
+            squares = null;
+            return;
+        }
         board = new Creature[height][width];
+
+        rowWords = (width + 63) >>> 6;
+        occupancy = new long[rowWords * height];
+
+        stride = width + 2;
+        squares = new short[stride * (height + 2)];
+        for (int x = 0; x < stride; x++) {
+            squares[x] = WALL;
+            squares[(height + 1) * stride + x] = WALL;
+        }
+        for (int y = 1; y <= height; y++) {
+            squares[y * stride] = WALL;
+            squares[y * stride + width + 1] = WALL;
+        }
+    }
+
+    /**
+     * Get the random generator of the world.
+     * 
+     * @return The world's random generator.
+     */
+    public WorldRandom random() {
+        return rand;
+    }
+
+    /**
+     * Get the listener that the world's creatures report their actions to.
+     * 
+     * @return The world's listener.
+     */
+    public SimulationListener listener() {
+        return listener;
+    }
+
+    /**
+     * Set the listener that the world's creatures report their actions to. A
+     * new world has SimulationListener.NONE, and runs without a display.
+     * 
+     * @param listener
+     *          The new listener.
+     */
+    public void setListener(SimulationListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        this.listener = listener;
     }
 
     /**
@@ -35,7 +183,7 @@ public class World {
      * @return The world height.
      */
     public int height() {
-        return board.length;
+        return height;
     }
 
     /**
@@ -44,7 +192,7 @@ public class World {
      * @return The world width.
      */
     public int width() {
-        return board[0].length;
+        return width;
     }
 
     /**
@@ -56,8 +204,20 @@ public class World {
      * @return Whether the given position is within the world bounds.
      */
     public boolean inBounds(Position pos) {
-        return 0 <= pos.getX() && pos.getX() < width() && 0 <= pos.getY()
-                && pos.getY() < height();
+        return inBounds(pos.getX(), pos.getY());
+    }
+
+    /**
+     * Check whether the given coordinates are within the bounds of the world.
+     * 
+     * @param x
+     *          The x coordinate to check.
+     * @param y
+     *          The y coordinate to check.
+     * @return Whether the given coordinates are within the world bounds.
+     */
+    public boolean inBounds(int x, int y) {
+        return 0 <= x && x < width && 0 <= y && y < height;
     }
 
     /**
@@ -67,7 +227,27 @@ public class World {
      * @return A random position within the world.
      */
     public Position randomPosition() {
-        return new Position(rand.nextInt(width()), rand.nextInt(height()));
+        int x = randomX();
+        return new Position(x, randomY());
+    }
+
+    /**
+     * Get a random x coordinate within the bounds of the world. Together with
+     * randomY, this picks a random position without allocating one.
+     * 
+     * @return A random x coordinate.
+     */
+    public int randomX() {
+        return rand.nextInt(width());
+    }
+
+    /**
+     * Get a random y coordinate within the bounds of the world.
+     * 
+     * @return A random y coordinate.
+     */
+    public int randomY() {
+        return rand.nextInt(height());
     }
 
     /**
@@ -80,10 +260,281 @@ public class World {
      *          The creature to place at the given position, or null.
      */
     public void set(Position pos, Creature creature) {
-        if (!inBounds(pos)) {
-            throw new IllegalArgumentException("bad position: " + pos);
+        set(pos.getX(), pos.getY(), creature);
+    }
+
+    /**
+     * Update the given world coordinates to contain the given creature (which
+     * may be null, in which case the square is cleared).
+     * 
+     * @param x
+     *          The x coordinate to update.
+     * @param y
+     *          The y coordinate to update.
+     * @param creature
+     *          The creature to place at the given coordinates, or null.
+     */
+    public void set(int x, int y, Creature creature) {
+        if (!inBounds(x, y)) {
+            throw new IllegalArgumentException("bad position: " + new Position(x, y));
+        }
+        board[y][x] = creature;
+
+        int word = y * rowWords + (x >>> 6);
+        short oldId = squares[squareIndex(x, y)];
+        short newId;
+        if (creature == null) {
+            occupancy[word] &= ~(1L << x);
+            newId = EMPTY;
+        } else {
+            occupancy[word] |= 1L << x;
+            newId = speciesId(creature.species());
+            creature.speciesId = newId;
+        }
+        squares[squareIndex(x, y)] = newId;
+        countChange(x, y, oldId, newId);
+    }
+
+    /**
+     * Move the creature at the first coordinates to the second coordinates,
+     * which must be in bounds and unoccupied.
+     * 
+     * @param fromX
+     *          The x coordinate to move from.
+     * @param fromY
+     *          The y coordinate to move from.
+     * @param toX
+     *          The x coordinate to move to.
+     * @param toY
+     *          The y coordinate to move to.
+     */
+    public void move(int fromX, int fromY, int toX, int toY) {
+        if (!inBounds(fromX, fromY)) {
+            throw new IllegalArgumentException("bad position: " + new Position(fromX, fromY));
+        } else if (!inBounds(toX, toY)) {
+            throw new IllegalArgumentException("bad position: " + new Position(toX, toY));
+        }
+        board[toY][toX] = board[fromY][fromX];
+        board[fromY][fromX] = null;
+
+        occupancy[fromY * rowWords + (fromX >>> 6)] &= ~(1L << fromX);
+        occupancy[toY * rowWords + (toX >>> 6)] |= 1L << toX;
+
+        int from = squareIndex(fromX, fromY);
+        short id = squares[from];
+        squares[squareIndex(toX, toY)] = id;
+        squares[from] = EMPTY;
+        if (tileCounts != null) {
+            tileCounts.move(fromX, fromY, toX, toY, id);
         }
-        board[pos.getY()][pos.getX()] = creature;
+    }
+
+    /**
+     * Record that the creature at the given coordinates has changed species
+     * (for example, because it was infected).
+     * 
+     * @param x
+     *          The x coordinate of the creature.
+     * @param y
+     *          The y coordinate of the creature.
+     */
+    public void speciesChanged(int x, int y) {
+        set(x, y, get(x, y));
+    }
+
+    /**
+     * Check whether the given coordinates, which must be in bounds, are
+     * occupied. This reads only the occupancy bitset.
+     * 
+     * @param x
+     *          The x coordinate to check.
+     * @param y
+     *          The y coordinate to check.
+     * @return Whether a creature is at the given coordinates.
+     */
+    public boolean occupied(int x, int y) {
+        return (occupancy[y * rowWords + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Count the creatures in the world.
+     * 
+     * @return The number of occupied squares.
+     */
+    public int population() {
+        int total = 0;
+        for (long word : occupancy) {
+            total += Long.bitCount(word);
+        }
+        return total;
+    }
+
+    /**
+     * Get the contents of a square for sensing. The coordinates may be up to
+     * one square outside of the world on each side, as the square in front of
+     * any creature is.
+     * 
+     * @param x
+     *          The x coordinate, from -1 to width.
+     * @param y
+     *          The y coordinate, from -1 to height.
+     * @return WALL, EMPTY, or the species id of the square's occupant.
+     */
+    public short squareAt(int x, int y) {
+        return squares[squareIndex(x, y)];
+    }
+
+    /**
+     * Get the species of a species id of the sensing grid. This may be called
+     * from any thread, such as the Swing thread reading the ids of the tile
+     * counts, while creatures run.
+     * 
+     * @param id
+     *          A species id, which is positive.
+     * @return The species with that id.
+     */
+    public Species speciesOf(short id) {
+        return species.get(id - 1);
+    }
+
+    // the index of a square in the sensing grid
+    private int squareIndex(int x, int y) {
+        return (y + 1) * stride + x + 1;
+    }
+
+    /**
+     * Start counting the creatures of each species in every block of the
+     * world, where the smallest blocks are 2^blockShift squares on a side (see
+     * TileCounts). The creatures already in the world are counted once; after
+     * that, the counts are kept up to date as creatures are placed, hop and
+     * are infected. This must not be called while creatures are running.
+     * 
+     * @param blockShift
+     *          The log2 of the width of the smallest blocks.
+     * @return The counts.
+     */
+    public TileCounts countTiles(int blockShift) {
+        if (tileCounts != null) {
+            if (tileCounts.blockShift() != blockShift) {
+                throw new IllegalStateException("tiles already counted with another block size");
+            }
+            return tileCounts;
+        }
+        TileCounts counts = new TileCounts(width, height, blockShift);
+        counts.ensureSpecies((short) species.size());
+        countExisting(counts);
+        tileCounts = counts;
+        return counts;
+    }
+
+    /**
+     * Get the counts of creatures in every block of the world.
+     * 
+     * @return The counts, or null if countTiles has not been called.
+     */
+    public TileCounts tileCounts() {
+        return tileCounts;
+    }
+
+    /**
+     * Add every creature already in the world to the given counts. A subclass
+     * that stores the board itself overrides this to avoid looking at every
+     * square.
+     * 
+     * @param counts
+     *          The counts to add to.
+     */
+    protected void countExisting(TileCounts counts) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                short id = squareAt(x, y);
+                if (id > EMPTY) {
+                    counts.add(x, y, id, 1);
+                }
+            }
+        }
+    }
+
+    // stop counting the creatures of this world in the Metrics
+    void finish() {
+        if (Metrics.ENABLED) {
+            Metrics.release(counted);
+        }
+    }
+
+    /**
+     * Call the given action for every creature in the world. A subclass that
+     * stores the board itself overrides this to avoid looking at every
+     * square. This must not be called while creatures are running.
+     * 
+     * @param action
+     *          The action to call.
+     */
+    public void forEachCreature(Consumer<Creature> action) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (squareAt(x, y) > EMPTY) {
+                    action.accept(get(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Record that the square at the given coordinates changed from one
+     * species id (or EMPTY) to another, in the tile counts if there are any
+     * and in the population of the Metrics if they are enabled.
+     * 
+     * @param x
+     *          The x coordinate of the square.
+     * @param y
+     *          The y coordinate of the square.
+     * @param oldId
+     *          What the square held before.
+     * @param newId
+     *          What the square holds now.
+     */
+    protected void countChange(int x, int y, short oldId, short newId) {
+        if (oldId == newId) {
+            return;
+        }
+        if (Metrics.ENABLED) {
+            counted.changed(oldId > EMPTY ? speciesOf(oldId) : null,
+                newId > EMPTY ? speciesOf(newId) : null);
+        }
+        if (tileCounts == null) {
+            return;
+        }
+        if (oldId > EMPTY) {
+            tileCounts.add(x, y, oldId, -1);
+        }
+        if (newId > EMPTY) {
+            tileCounts.add(x, y, newId, 1);
+        }
+    }
+
+    /**
+     * Get the species id of a species, registering it the first time it is
+     * seen.
+     * 
+     * @param s
+     *          The species.
+     * @return The positive id of the species in this world.
+     */
+    protected short speciesId(Species s) {
+        Short id = speciesIds.get(s);
+        if (id == null) {
+            if (species.size() == Short.MAX_VALUE) {
+                throw new IllegalStateException("too many species");
+            }
+            species.add(s);
+            id = (short) species.size();
+            speciesIds.put(s, id);
+            if (tileCounts != null) {
+                tileCounts.ensureSpecies(id);
+            }
+        }
+        return id;
     }
 
     /**
@@ -95,10 +546,24 @@ public class World {
      * @return The creature at the specified position, or null.
      */
     public Creature get(Position pos) {
-        if (!inBounds(pos)) {
-            throw new IllegalArgumentException("bad position: " + pos);
+        return get(pos.getX(), pos.getY());
+    }
+
+    /**
+     * Get the creature at the given coordinates of the board, or null if no
+     * creature occupies that square.
+     * 
+     * @param x
+     *          The x coordinate to get.
+     * @param y
+     *          The y coordinate to get.
+     * @return The creature at the specified coordinates, or null.
+     */
+    public Creature get(int x, int y) {
+        if (!inBounds(x, y)) {
+            throw new IllegalArgumentException("bad position: " + new Position(x, y));
         }
-        return board[pos.getY()][pos.getX()];
+        return board[y][x];
     }
 
 }
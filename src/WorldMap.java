@@ -4,42 +4,91 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
-import java.awt.Rectangle;
-import java.awt.Shape;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
  * This class provides functionality to draw the graphical world map during a
  * Bug Fight simulation. Before any other operations can be performed, the starting
- * map must be initialized by calling WorldMap.initialize(width, height).
+ * map must be initialized by calling WorldMap.initialize(width, height), or
+ * WorldMap.initialize(world) to show a world as it is.
+ *
+ * The window is a viewport onto the world, which can be of any size: dragging
+ * with the mouse pans it, and the mouse wheel zooms in and out. Only the
+ * squares in view are ever drawn, into an off-screen image the size of the
+ * window, and when zoomed out creatures are drawn as plain colored squares.
+ * A map showing a world zooms out further, to an overview where each pixel
+ * is a square or a block of squares colored by the species with the most
+ * creatures in it, read from the world's TileCounts; so even a world of tens
+ * of millions of squares can be seen whole and panned smoothly.
+ *
+ * The Swing thread never reads the squares of a world while its creatures
+ * run. It draws what the frames published to it say, and the TileCounts,
+ * which may be read from any thread.
+ *
+ * Drawing never waits for the screen. The draw and clear operations only note
+ * which region changed; flush (or pause) then has the Swing thread draw the
+ * changed squares that are in view and repaint them, all at once.
  */
 public class WorldMap {
 
     // singleton map to be operated on by the rest of the program
     private static WorldMapImpl map = null;
 
-    // whether to synchronize immediately after redrawing
-    private static boolean synchronize = true;
-
     /**
      * Initialize the world map of the specified size and display the window for
      * it. This must be called once and only once, before calling any other
      * WorldMap operations. Produces an error if called multiple times.
      * 
      * @param width
-     *          The width of the world (1 to 30).
+     *          The width of the world.
      * @param height
-     *          The height of the world (1 to 30).
+     *          The height of the world.
      */
     public static void initialize(int width, int height) {
         if (map != null) {
             throw new IllegalStateException("map already initialized");
         }
-        map = new WorldMapImpl(width, height);
+        map = new WorldMapImpl(width, height, null);
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Initialize the world map to show the given world, and display the window
+     * for it. The map takes how every creature looks from the world now, and
+     * after that only from the frames of a FrameRing it follows, or from the
+     * draw operations; it keeps the looks of the occupied squares only, so
+     * its memory grows with the creatures and not with the world. The
+     * world's tiles are counted (see World.countTiles) for the overview, if
+     * they are not already. This must be called once and only once, instead
+     * of initialize(width, height), and before the world's creatures start
+     * running.
+     * 
+     * @param world
+     *          The world to show.
+     */
+    public static void initialize(World world) {
+        if (map != null) {
+            throw new IllegalStateException("map already initialized");
+        }
+        map = new WorldMapImpl(world.width(), world.height(), world);
         try {
             Thread.sleep(100);
         } catch (InterruptedException e) {
@@ -65,7 +114,7 @@ public class WorldMap {
         }
         Species species = creature.species();
         char letter = species.getName().charAt(0);
-        map.displaySquareInst(creature.position(), letter, creature.direction(),
+        map.displaySquareInst(creature.x(), creature.y(), letter, creature.direction(),
             species.getColor());
     }
 
@@ -80,7 +129,7 @@ public class WorldMap {
             throw new IllegalStateException(
                 "map not created; call WorldMap.initialize");
         }
-        map.displaySquareInst(pos, ' ', null, null);
+        map.displaySquareInst(pos.getX(), pos.getY(), ' ', null, null);
     }
 
     /**
@@ -99,26 +148,77 @@ public class WorldMap {
         if (map == null) {
             throw new IllegalStateException(
                 "map not created; call WordlMap.initialize");
-        } else if (creature.position().equals(prevPos)) {
-            throw new IllegalArgumentException(
-                "creature position and prevPos are the same");
         } else if (prevPos == null) {
             throw new NullPointerException("prevPos cannot be null");
         }
-        synchronize = false;
-        clearSquare(prevPos);
-        synchronize = true;
+        drawMovedCreature(creature, prevPos.getX(), prevPos.getY());
+    }
+
+    /**
+     * Re-draw a creature that just moved from the given coordinates. This is
+     * the same as drawMovedCreature(creature, prevPos), without needing a
+     * Position.
+     * 
+     * @param creature
+     *          The creature to draw.
+     * @param prevX
+     *          The x coordinate of the square to clear.
+     * @param prevY
+     *          The y coordinate of the square to clear.
+     */
+    public static void drawMovedCreature(Creature creature, int prevX, int prevY) {
+        if (map == null) {
+            throw new IllegalStateException(
+                "map not created; call WorldMap.initialize");
+        } else if (creature.x() == prevX && creature.y() == prevY) {
+            throw new IllegalArgumentException(
+                "creature position and prevPos are the same");
+        }
+        map.displaySquareInst(prevX, prevY, ' ', null, null);
         drawCreature(creature);
     }
 
+    /**
+     * Show the frames published to the given ring as they come. The window
+     * takes every published frame at each of its own refreshes, about sixty
+     * times a second, and draws again every changed square in view, so a
+     * simulation running faster than the screen never waits for it.
+     * 
+     * @param ring
+     *          The ring the simulation publishes its changes to.
+     */
+    public static void follow(FrameRing ring) {
+        if (map == null) {
+            throw new IllegalStateException(
+                "map not created; call WorldMap.initialize");
+        }
+        map.follow(ring);
+    }
+
+    /**
+     * Show every change drawn since the last flush. This returns at once; the
+     * window is updated shortly afterwards by the Swing thread.
+     */
+    public static void flush() {
+        if (map == null) {
+            throw new IllegalStateException(
+                "map not created; call WorldMap.initialize");
+        }
+        map.flush();
+    }
+
     /**
      * Pause the simulation for the given duration. This should be called
-     * periodically to prevent the simulation from completing instantly.
+     * periodically to prevent the simulation from completing instantly. Any
+     * changes drawn since the last flush are shown first.
      * 
      * @param durationMs
      *          The duration to pause, in milliseconds.
      */
     public static void pause(long durationMs) {
+        if (map != null) {
+            map.flush();
+        }
         try {
             Thread.sleep(durationMs);
         } catch (InterruptedException e) {
@@ -145,42 +245,181 @@ public class WorldMap {
      */
     private static class WorldMapImpl extends JPanel {
         private static final long serialVersionUID = 0L;
-        private static final int SQUARE_SIZE = 22;
+        private static final int SQUARE_SIZE = 22; // size of a square at normal zoom
         private static final int INSET = 10;
+        private static final int FRAME_MS = 16;
+        private static final int MIN_SQUARE_SIZE = 2;
+        private static final int MAX_SQUARE_SIZE = 88;
+        private static final int GRID_SIZE = 6; // smallest squares with grid lines
+        private static final int ARROW_SIZE = 12; // smallest squares with arrows
+        private static final int LETTER_SIZE = 16; // smallest squares with letters
+        private static final int MAX_WINDOW_SIZE = 900;
+        private static final int BLOCK_SHIFT = 3; // log2 of the smallest counted blocks
+        private static final int WHITE = 0xFFFFFF;
+        private static final Direction[] DIRECTIONS = Direction.values();
+        // a look packs the letter in the low 16 bits, then the direction,
+        // then the palette index of the color, which leaves room for
+        // MAX_COLORS colors without using the sign bit
+        private static final int DIRECTION_SHIFT = 16;
+        private static final int DIRECTION_MASK = 7;
+        private static final int COLOR_SHIFT = 19;
+        private static final int MAX_COLORS = 1 << (31 - COLOR_SHIFT);
         private int width, height; // size of board
-        private Cell[][] board; // the board
-        private static final Font font = new Font("Roman", 0, 10);
 
-        /**
-         * Info about one cell on the board
+        // the world shown, or null if squares are drawn; only its tile
+        // counts and species are read once creatures run
+        private final World world;
+
+        // the world's counts for the overview, or null if squares are drawn
+        private final TileCounts counts;
+
+        /*
+         * The contents of each square, by index y * width + x, as last drawn
+         * by the simulation; null when a world is shown.
          */
-        private static class Cell {
-            private char c = ' ';
-            private Direction dir = null;
-            private Color color = Color.BLACK;
-        }
+        private final char[] letters;
+        private final Direction[] dirs;
+        private final Color[] colors;
+
+        // guards the changed region; it is only ever held for a moment
+        private final Object lock = new Object();
+
+        // the squares changed since the last flush, as a rectangle that is
+        // empty while maxX < 0. Guarded by lock.
+        private int dirtyMinX, dirtyMinY, dirtyMaxX = -1, dirtyMaxY = -1;
 
-        private WorldMapImpl(int w, int h) {
+        // whether a flush is waiting for the Swing thread. Guarded by lock.
+        private boolean flushPending = false;
+
+        // with a world shown, the squares drawn since the last flush, and
+        // how they look. Guarded by lock.
+        private final FrameRing.Frame drawn = new FrameRing.Frame();
+
+        /*
+         * Everything below is used only by the Swing thread.
+         */
+
+        // the size of a square in pixels, and the position of the view's
+        // top left corner in a picture of the whole board at that size
+        private int squareSize;
+        private int viewX = 0, viewY = 0;
+
+        // in the overview, where squareSize is 1, the log2 of the number of
+        // squares across each pixel
+        private int pixelShift = 0;
+
+        // the picture of the view, and its pixels
+        private BufferedImage image;
+        private int[] pixels;
+
+        /*
+         * With a world shown, how each occupied square looks, by index
+         * y * width + x, packed into an int (see COLOR_SHIFT); filled in from
+         * the world when the map is made, and then from frames and the drawn
+         * squares.
+         */
+        private final LongIntMap looks;
+
+        // the colors of the looks, each once, and the index of each
+        private final ArrayList<Color> palette = new ArrayList<>();
+        private final HashMap<Color, Integer> paletteIndex = new HashMap<>();
+
+        // the RGB color of each species id, or 0 if not yet looked up
+        private int[] rgbs = new int[8];
+
+        // the number of squares of each palette color in a pixel's squares
+        private int[] tally = new int[8];
+
+        // the font for letters at the current square size
+        private Font font;
+
+        // where the mouse was when the current drag last moved
+        private int dragX, dragY;
+
+        // the contents of the square last looked at
+        private char lookLetter;
+        private Direction lookDir;
+        private Color lookColor;
+
+        // the corners of an arrow
+        private final int[] arrowX = new int[5];
+        private final int[] arrowY = new int[5];
+
+        private WorldMapImpl(int w, int h, World world) {
             super(true);
 
             // Initialize drawing colors, border, opacity.
             setBackground(Color.WHITE);
             setForeground(Color.BLACK);
 
-            if (w > 30 || h > 30) {
-                throw new IllegalArgumentException("only supports sizes up to 30x30");
+            if (w <= 0 || h <= 0) {
+                throw new IllegalArgumentException("width and height must be >0");
             }
             width = w;
             height = h;
-            board = new Cell[w][h];
-            for (int i = 0; i < width; i++) {
-                for (int j = 0; j < height; j++) {
-                    board[i][j] = new Cell();
+            this.world = world;
+            if (world == null) {
+                letters = new char[w * h];
+                dirs = new Direction[w * h];
+                colors = new Color[w * h];
+                Arrays.fill(letters, ' ');
+                counts = null;
+            } else {
+                letters = null;
+                dirs = null;
+                colors = null;
+                counts = world.tileCounts() != null ? world.tileCounts()
+                    : world.countTiles(BLOCK_SHIFT);
+            }
+            looks = world == null ? null : new LongIntMap();
+            if (world != null) {
+                // the creatures do not run yet, and the Swing thread starts
+                // drawing only once the window is shown
+                world.forEachCreature(creature -> {
+                    Species species = creature.species();
+                    remember(creature.x(), creature.y(), species.getName().charAt(0),
+                        creature.direction(), species.getColor());
+                });
+            }
+
+            // start zoomed out far enough to see the whole board, if possible
+            int fit = (MAX_WINDOW_SIZE - 2 * INSET) / Math.max(w, h);
+            if (fit < MIN_SQUARE_SIZE && world != null) {
+                setSquareSize(1);
+                while ((Math.max(w, h) - 1 >> pixelShift) + 1 > MAX_WINDOW_SIZE - 2 * INSET) {
+                    pixelShift++;
                 }
+            } else {
+                setSquareSize(Math.max(MIN_SQUARE_SIZE, Math.min(SQUARE_SIZE, fit)));
             }
+
+            MouseAdapter mouse = new MouseAdapter() {
+                    @Override
+                    public void mousePressed(MouseEvent e) {
+                        dragX = e.getX();
+                        dragY = e.getY();
+                    }
+
+                    @Override
+                    public void mouseDragged(MouseEvent e) {
+                        panTo(viewX - (e.getX() - dragX), viewY - (e.getY() - dragY));
+                        dragX = e.getX();
+                        dragY = e.getY();
+                    }
+
+                    @Override
+                    public void mouseWheelMoved(MouseWheelEvent e) {
+                        zoom(e.getWheelRotation() < 0, e.getX(), e.getY());
+                    }
+                };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            addMouseWheelListener(mouse);
+
             JFrame f = new JFrame("Bug Fight");
-            f.setSize(new Dimension(2 * INSET + SQUARE_SIZE * (w + 1) + 10,
-                    2 * INSET + SQUARE_SIZE * (h + 1) + 10));
+            f.setSize(new Dimension(
+                    Math.min(MAX_WINDOW_SIZE, 2 * INSET + squareSize * (w + 1) + 10),
+                    Math.min(MAX_WINDOW_SIZE, 2 * INSET + squareSize * (h + 1) + 10)));
             f.addWindowListener(new WindowAdapter() {
                     @Override
                     public void windowClosing(WindowEvent e) {
@@ -189,130 +428,467 @@ public class WorldMap {
                 });
             f.getContentPane().add(this, BorderLayout.CENTER);
             f.setVisible(true);
-            f.setResizable(false);
             repaint(0, 0, getWidth(), getHeight());
         }
 
         /*
-         * Used to control synchronization between Darwin thread and AWT thread.
-         */
-        private final Object sem = new Object();
-
-        /*
-         * Store the new info in the board, and generate a repaint event. This
-         * method will block until the repaint actually occurs.
+         * Store the new info in the board, and add the square to the changed
+         * region. The square is shown at the next flush.
          */
-        private void displaySquareInst(Position pos, char c, Direction d, Color color) {
+        private void displaySquareInst(int x, int y, char c, Direction d, Color color) {
             if (!doDisplay) {
                 return;
             }
-            int x = pos.getX();
-            int y = pos.getY();
             if (x < 0 || x >= width || y < 0 || y >= height) {
                 throw new IllegalArgumentException("bad display square call");
+            } else if (letters == null) {
+                // the Swing thread takes the looks of the square at the flush
+                synchronized (lock) {
+                    drawn.add(x, y, c, d, color);
+                }
+                changed(x, y, x, y);
+                return;
+            }
+            int square = y * width + x;
+            letters[square] = c;
+            dirs[square] = d;
+            colors[square] = color;
+            changed(x, y, x, y);
+        }
+
+        // add the given rectangle of squares to the changed region
+        private void changed(int minX, int minY, int maxX, int maxY) {
+            synchronized (lock) {
+                if (dirtyMaxX < 0) {
+                    dirtyMinX = minX;
+                    dirtyMinY = minY;
+                    dirtyMaxX = maxX;
+                    dirtyMaxY = maxY;
+                } else {
+                    dirtyMinX = Math.min(dirtyMinX, minX);
+                    dirtyMinY = Math.min(dirtyMinY, minY);
+                    dirtyMaxX = Math.max(dirtyMaxX, maxX);
+                    dirtyMaxY = Math.max(dirtyMaxY, maxY);
+                }
+            }
+        }
+
+        /*
+         * Have the Swing thread show the changed region, unless it is still
+         * to show an earlier one, in which case it shows both together.
+         */
+        private void flush() {
+            synchronized (lock) {
+                if (dirtyMaxX < 0 || flushPending) {
+                    return;
+                }
+                flushPending = true;
+            }
+            SwingUtilities.invokeLater(this::drawChanges);
+        }
+
+        /*
+         * On the Swing thread: take the changed region, and draw it again.
+         */
+        private void drawChanges() {
+            int minX, minY, maxX, maxY;
+            synchronized (lock) {
+                minX = dirtyMinX;
+                minY = dirtyMinY;
+                maxX = dirtyMaxX;
+                maxY = dirtyMaxY;
+                dirtyMaxX = -1;
+                dirtyMaxY = -1;
+                flushPending = false;
+                for (int i = 0; i < drawn.size(); i++) {
+                    remember(drawn.x(i), drawn.y(i), drawn.letter(i), drawn.direction(i),
+                        drawn.color(i));
+                }
+                drawn.clear();
+            }
+            redraw(minX, minY, maxX, maxY);
+        }
+
+        /*
+         * Take the frames of the given ring at every refresh of the window.
+         */
+        private void follow(FrameRing ring) {
+            SwingUtilities.invokeLater(() -> new Timer(FRAME_MS, e -> drawFrames(ring)).start());
+        }
+
+        /*
+         * On the Swing thread: take every published frame, then draw again
+         * the smallest rectangle of squares around their changes.
+         */
+        private void drawFrames(FrameRing ring) {
+            int minX = width, minY = height, maxX = -1, maxY = -1;
+            for (FrameRing.Frame frame = ring.peek(); frame != null; frame = ring.peek()) {
+                for (int i = 0; i < frame.size(); i++) {
+                    int x = frame.x(i);
+                    int y = frame.y(i);
+                    if (letters != null) {
+                        int square = y * width + x;
+                        letters[square] = frame.letter(i);
+                        dirs[square] = frame.direction(i);
+                        colors[square] = frame.color(i);
+                    } else {
+                        remember(x, y, frame.letter(i), frame.direction(i), frame.color(i));
+                    }
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+                ring.release();
+            }
+            if (maxX >= 0) {
+                redraw(minX, minY, maxX, maxY);
+            }
+        }
+
+        /*
+         * Draw the squares of the given rectangle that are in view into the
+         * picture of the view, and repaint them.
+         */
+        private void redraw(int minX, int minY, int maxX, int maxY) {
+            if (image == null) {
+                // the first paint draws everything
+                return;
+            }
+            minX = Math.max(minX, firstColumn());
+            minY = Math.max(minY, firstRow());
+            maxX = Math.min(maxX, lastColumn());
+            maxY = Math.min(maxY, lastRow());
+            if (minX > maxX || minY > maxY) {
+                return;
+            }
+            draw(minX, minY, maxX, maxY);
+            repaint(left(minX), top(minY),
+                ((maxX >> pixelShift) - (minX >> pixelShift) + 1) * squareSize + 1,
+                ((maxY >> pixelShift) - (minY >> pixelShift) + 1) * squareSize + 1);
+        }
+
+        // draw every square in view into a new picture of the view
+        private void redrawAll() {
+            image = new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()),
+                BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            Arrays.fill(pixels, WHITE);
+            draw(firstColumn(), firstRow(), lastColumn(), lastRow());
+            repaint();
+        }
+
+        // draw the given rectangle of squares, which is in view
+        private void draw(int minX, int minY, int maxX, int maxY) {
+            if (squareSize == 1) {
+                drawOverview(minX >> pixelShift, minY >> pixelShift,
+                    maxX >> pixelShift, maxY >> pixelShift);
+                return;
             }
-            board[x][y].c = c;
-            board[x][y].dir = d;
-            board[x][y].color = color;
-            // to make sure all updates are seen in a timely fashion, we
-            // wait on sem here. sem is notified after the refresh has
-            // occured.
-            synchronized (sem) {
-                // dont't repaint over grid lines
-                repaint(INSET + x * SQUARE_SIZE + 1, INSET + y * SQUARE_SIZE + 1,
-                    SQUARE_SIZE - 2, SQUARE_SIZE - 2);
-
-                if (synchronize) {
-                    try {
-                        // wait until repaint has occurred.
-                        sem.wait(1000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                        // Should never get here, but just try to
-                        // keep going if anything goes wrong.
-                        return;
+            Graphics g = image.getGraphics();
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    drawSquare(g, x, y);
+                }
+            }
+            g.dispose();
+        }
+
+        /*
+         * Draw the given rectangle of overview pixels, in pixel columns and
+         * rows of the board, straight into the picture's pixels.
+         */
+        private void drawOverview(int minPx, int minPy, int maxPx, int maxPy) {
+            int imageWidth = image.getWidth();
+            int imageHeight = image.getHeight();
+            for (int py = minPy; py <= maxPy; py++) {
+                int top = INSET + py - viewY;
+                if (top < 0 || top >= imageHeight) {
+                    continue;
+                }
+                for (int px = minPx; px <= maxPx; px++) {
+                    int left = INSET + px - viewX;
+                    if (left >= 0 && left < imageWidth) {
+                        pixels[top * imageWidth + left] = overviewColor(px, py);
                     }
                 }
             }
         }
 
-        private void drawGrid(Graphics g) {
-            g.setColor(Color.BLACK);
-            for (int i = 0; i <= width; i++) {
-                g.drawLine(INSET + i * SQUARE_SIZE, INSET, INSET + i * SQUARE_SIZE,
-                    INSET + height * SQUARE_SIZE);
+        /*
+         * The color of an overview pixel: that of the species with the most
+         * creatures in its squares, or white if they are empty. Blocks at
+         * least as large as the counted ones are read from the counts, and
+         * smaller ones from the looks of their squares.
+         */
+        private int overviewColor(int px, int py) {
+            if (pixelShift >= counts.blockShift()) {
+                short id = counts.dominant(pixelShift - counts.blockShift(), px, py);
+                return id > World.EMPTY ? rgb(id) : WHITE;
+            }
+            int color = dominantColor(px, py);
+            if (color < 0) {
+                return WHITE;
             }
-            for (int i = 0; i <= height; i++) {
-                g.drawLine(INSET, INSET + i * SQUARE_SIZE, INSET + width * SQUARE_SIZE,
-                    INSET + i * SQUARE_SIZE);
+            return rgb(palette.get(color));
+        }
+
+        // the palette color of the most squares of a pixel, or -1 if they
+        // are all empty
+        private int dominantColor(int px, int py) {
+            Arrays.fill(tally, 0);
+            int best = -1;
+            int bestCount = 0;
+            int maxX = Math.min(width, px + 1 << pixelShift);
+            int maxY = Math.min(height, py + 1 << pixelShift);
+            for (int y = py << pixelShift; y < maxY; y++) {
+                for (int x = px << pixelShift; x < maxX; x++) {
+                    int look = looks.get((long) y * width + x);
+                    if (look == LongIntMap.ABSENT) {
+                        continue;
+                    }
+                    int color = look >>> COLOR_SHIFT;
+                    if (color >= tally.length) {
+                        tally = Arrays.copyOf(tally, color * 2);
+                    }
+                    int count = ++tally[color];
+                    if (count > bestCount || count == bestCount && color < best) {
+                        best = color;
+                        bestCount = count;
+                    }
+                }
             }
+            return best;
+        }
+
+        // the RGB color of a species id; the cached colors are opaque, so
+        // that 0 means not cached yet
+        private int rgb(short id) {
+            if (id >= rgbs.length) {
+                rgbs = Arrays.copyOf(rgbs, id * 2);
+            }
+            if (rgbs[id] == 0) {
+                rgbs[id] = rgb(world.speciesOf(id).getColor()) | ~WHITE;
+            }
+            return rgbs[id] & WHITE;
+        }
+
+        // the RGB of a species color, drawing a species without one in black
+        private static int rgb(Color color) {
+            return color == null ? 0 : color.getRGB() & WHITE;
+        }
+
+        // move the view's top left corner to the given point of the board
+        private void panTo(int x, int y) {
+            int boardWidth = 2 * INSET + ((width - 1 >> pixelShift) + 1) * squareSize;
+            int boardHeight = 2 * INSET + ((height - 1 >> pixelShift) + 1) * squareSize;
+            viewX = Math.max(-getWidth() / 2, Math.min(x, boardWidth - getWidth() / 2));
+            viewY = Math.max(-getHeight() / 2, Math.min(y, boardHeight - getHeight() / 2));
+            redrawAll();
+        }
+
+        /*
+         * Zoom in or out by a factor of two, keeping the board still under
+         * the mouse. A map showing a world zooms out past the smallest
+         * squares into the overview, until the board is a single pixel.
+         */
+        private void zoom(boolean in, int mouseX, int mouseY) {
+            double oldScale = squareSize / (double) (1 << pixelShift);
+            if (in) {
+                if (pixelShift > 0) {
+                    pixelShift--;
+                } else {
+                    setSquareSize(Math.min(MAX_SQUARE_SIZE, squareSize * 2));
+                }
+            } else if (squareSize > MIN_SQUARE_SIZE) {
+                setSquareSize(Math.max(MIN_SQUARE_SIZE, squareSize / 2));
+            } else if (world != null && squareSize > 1) {
+                setSquareSize(1);
+            } else if (world != null && (width - 1 >> pixelShift | height - 1 >> pixelShift) > 0) {
+                pixelShift++;
+            }
+            double scale = squareSize / (double) (1 << pixelShift);
+            if (scale == oldScale) {
+                return;
+            }
+            double column = (viewX + mouseX - INSET) / oldScale;
+            double row = (viewY + mouseY - INSET) / oldScale;
+            panTo((int) Math.round(INSET + column * scale - mouseX),
+                (int) Math.round(INSET + row * scale - mouseY));
+        }
+
+        private void setSquareSize(int size) {
+            squareSize = size;
+            font = new Font("Roman", 0, Math.max(6, 10 * size / SQUARE_SIZE));
+        }
+
+        // the range of squares in view
+        private int firstColumn() {
+            return Math.max(0, Math.floorDiv(viewX - INSET, squareSize) << pixelShift);
+        }
+
+        private int lastColumn() {
+            int last = Math.floorDiv(viewX + getWidth() - INSET, squareSize) + 1 << pixelShift;
+            return Math.min(width - 1, last - 1);
+        }
+
+        private int firstRow() {
+            return Math.max(0, Math.floorDiv(viewY - INSET, squareSize) << pixelShift);
+        }
+
+        private int lastRow() {
+            int last = Math.floorDiv(viewY + getHeight() - INSET, squareSize) + 1 << pixelShift;
+            return Math.min(height - 1, last - 1);
+        }
+
+        // the left and top edges of a square, in the view
+        private int left(int x) {
+            return INSET + (x >> pixelShift) * squareSize - viewX;
+        }
+
+        private int top(int y) {
+            return INSET + (y >> pixelShift) * squareSize - viewY;
+        }
+
+        /*
+         * Look at the contents of a square, as last drawn or published, into
+         * lookLetter, lookDir and lookColor.
+         */
+        private void look(int x, int y) {
+            if (letters != null) {
+                int square = y * width + x;
+                lookLetter = letters[square];
+                lookDir = dirs[square];
+                lookColor = colors[square];
+                return;
+            }
+            int look = looks.get((long) y * width + x);
+            if (look == LongIntMap.ABSENT) {
+                lookLetter = ' ';
+                lookDir = null;
+                lookColor = null;
+                return;
+            }
+            lookLetter = (char) look;
+            lookDir = DIRECTIONS[(look >>> DIRECTION_SHIFT) & DIRECTION_MASK];
+            lookColor = palette.get(look >>> COLOR_SHIFT);
+        }
+
+        // note how a square of a world looks, or that it is empty if the
+        // letter is a space
+        private void remember(int x, int y, char letter, Direction dir, Color color) {
+            long square = (long) y * width + x;
+            if (letter == ' ') {
+                looks.remove(square);
+                return;
+            }
+            Integer index = paletteIndex.get(color);
+            if (index == null) {
+                if (palette.size() == MAX_COLORS) {
+                    throw new IllegalStateException("too many colors");
+                }
+                index = palette.size();
+                palette.add(color);
+                paletteIndex.put(color, index);
+            }
+            looks.put(square, index << COLOR_SHIFT | dir.ordinal() << DIRECTION_SHIFT | letter);
         }
 
         /**
-         * Draw one cell on the grid. Pass in the x and y grid position and the
-         * contents of the cell.
+         * Draw one square of the board, with its grid lines when they are big
+         * enough to see.
          */
-        private void drawSquare(Graphics g, int x, int y, Cell cell) {
-            int sqX = INSET + x * SQUARE_SIZE + 1; // left edge of square
-            int sqY = INSET + y * SQUARE_SIZE + 1; // right edge of square
-            int fontX = 0; // x offset to put char in decent place for different dirs
-            int fontY = 0; // y offset to put char in decent place for different dirs
+        private void drawSquare(Graphics g, int x, int y) {
+            int left = left(x);
+            int top = top(y);
+            g.setColor(Color.WHITE);
+            g.fillRect(left, top, squareSize, squareSize);
+            int inner = 0; // width of the grid line inside the square
+            if (squareSize >= GRID_SIZE) {
+                g.setColor(Color.BLACK);
+                g.drawRect(left, top, squareSize, squareSize);
+                inner = 1;
+            }
 
-            if (cell.c == ' ') {
+            look(x, y);
+            if (lookLetter == ' ') {
+                return;
+            }
+            g.setColor(lookColor);
+            if (squareSize < ARROW_SIZE) {
+                g.fillRect(left + inner, top + inner, squareSize - inner, squareSize - inner);
                 return;
             }
 
-            g.setColor(cell.color);
+            int sqX = left + 1; // left edge of square
+            int sqY = top + 1; // top edge of square
+            int near = scale(2); // the corners of an arrow at normal size are
+            int mid = scale(10); // 2, 10 and 18 pixels into the square
+            int far = scale(18);
+            int fontX = 0; // x offset to put char in decent place for different dirs
+            int fontY = 0; // y offset to put char in decent place for different dirs
 
-            switch (cell.dir) {
-                case NORTH: {
-                    int[] x1Points = { sqX + 10, sqX + 18, sqX + 18, sqX + 2, sqX + 2 };
-                    int[] y1Points = { sqY + 2, sqY + 10, sqY + 18, sqY + 18, sqY + 10 };
-                    g.drawPolygon(x1Points, y1Points, x1Points.length);
+            switch (lookDir) {
+                case NORTH:
+                    arrow(sqX, sqY, mid, far, far, near, near, near, mid, far, far, mid);
                     fontX = 1;
                     fontY = 1;
                     break;
-                }
-                case WEST: {
-                    int[] x1Points = { sqX + 2, sqX + 10, sqX + 18, sqX + 18, sqX + 10 };
-                    int[] y1Points = { sqY + 10, sqY + 18, sqY + 18, sqY + 2, sqY + 2 };
-                    g.drawPolygon(x1Points, y1Points, x1Points.length);
+                case WEST:
+                    arrow(sqX, sqY, near, mid, far, far, mid, mid, far, far, near, near);
                     fontX = 4;
                     fontY = 2;
                     break;
-                }
-                case SOUTH: {
-                    int[] x1Points = { sqX + 10, sqX + 18, sqX + 18, sqX + 2, sqX + 2 };
-                    int[] y1Points = { sqY + 18, sqY + 10, sqY + 2, sqY + 2, sqY + 10 };
-                    g.drawPolygon(x1Points, y1Points, x1Points.length);
+                case SOUTH:
+                    arrow(sqX, sqY, mid, far, far, near, near, far, mid, near, near, mid);
                     fontX = 1;
                     fontY = 4;
                     break;
-                }
-                case EAST: {
-                    int[] x1Points = { sqX + 18, sqX + 10, sqX + 2, sqX + 2, sqX + 10 };
-                    int[] y1Points = { sqY + 10, sqY + 18, sqY + 18, sqY + 2, sqY + 2 };
-                    g.drawPolygon(x1Points, y1Points, x1Points.length);
+                case EAST:
+                    arrow(sqX, sqY, far, mid, near, near, mid, mid, far, far, near, near);
                     fontX = -1;
                     fontY = 2;
                     break;
-                }
                 default:
-                throw new IllegalStateException("bad direction: " + cell.dir);
+                throw new IllegalStateException("bad direction: " + lookDir);
             }
+            g.drawPolygon(arrowX, arrowY, arrowX.length);
 
+            if (squareSize < LETTER_SIZE) {
+                return;
+            }
             g.setFont(font);
             FontMetrics fm = g.getFontMetrics();
             int height = fm.getHeight() - fontY;
-            int width = fm.charWidth(cell.c) - fontX;
+            int width = fm.charWidth(lookLetter) - fontX;
 
-            g.drawString("" + cell.c, sqX + 10 - width / 2, sqY + 10 + height / 2);
+            g.drawString("" + lookLetter, sqX + mid - width / 2, sqY + mid + height / 2);
+
+        }
 
+        // scale a distance within a square of normal size to the current size
+        private int scale(int distance) {
+            return distance * squareSize / SQUARE_SIZE;
+        }
+
+        // set the corners of an arrow, offset from the given point
+        private void arrow(int sqX, int sqY, int x0, int x1, int x2, int x3, int x4,
+                int y0, int y1, int y2, int y3, int y4) {
+            arrowX[0] = sqX + x0;
+            arrowX[1] = sqX + x1;
+            arrowX[2] = sqX + x2;
+            arrowX[3] = sqX + x3;
+            arrowX[4] = sqX + x4;
+            arrowY[0] = sqY + y0;
+            arrowY[1] = sqY + y1;
+            arrowY[2] = sqY + y2;
+            arrowY[3] = sqY + y3;
+            arrowY[4] = sqY + y4;
         }
 
         /**
-         * Clear what will be repainted, redraw grid if needed, and then draw any
-         * squares in the clip area.
+         * Copy the picture of the view, drawing it again first if the window
+         * changed size.
          */
         @Override
         protected void paintComponent(Graphics g) {
@@ -320,32 +896,11 @@ public class WorldMap {
             // erase clip region
             super.paintComponent(g);
 
-            // compute the grid squares that must be redrawn
-            Shape rect = g.getClip();
-            Rectangle bounds = rect.getBounds();
-            int minX = Math.max(0, (int) ((bounds.getX() - INSET) / SQUARE_SIZE));
-            int minY = Math.max(0, (int) ((bounds.getY() - INSET) / SQUARE_SIZE));
-            int maxX = Math.min(width - 1,
-                    (int) ((bounds.getX() + bounds.getWidth() - INSET) / SQUARE_SIZE));
-            int maxY = Math.min(height - 1,
-                    (int) ((bounds.getY() + bounds.getHeight() - INSET) / SQUARE_SIZE));
-
-            // only redraw grid if clip overlaps one or more grid lines.
-            if (minX != maxX || minY != maxY) {
-                drawGrid(g);
+            if (image == null || image.getWidth() != getWidth()
+                    || image.getHeight() != getHeight()) {
+                redrawAll();
             }
-
-            for (int i = minX; i <= maxX; i++) {
-                for (int j = minY; j <= maxY; j++) {
-                    drawSquare(g, i, j, board[i][j]);
-                }
-            }
-
-            synchronized (sem) {
-                // wake up Darwin thread
-                sem.notify();
-            }
-
+            g.drawImage(image, 0, 0, null);
         }
     }
 
@@ -0,0 +1,93 @@
+import java.awt.Color;
+
+/**
+ * This class represents a simulation listener that shows the simulation in the
+ * graphical world map. The changes of each tick are collected, one per square,
+ * and published at the end of the tick to a FrameRing that the world map
+ * reads at its own pace. If the world map has fallen behind and the ring is
+ * full, the changes are kept and merged with those of the next tick, so the
+ * simulation never waits for the screen and the screen never misses a change.
+ * The changes are found by square through a LongIntMap, so the listener's
+ * memory grows with the changes waiting to be published, not with the size
+ * of the world.
+ *
+ * The world map must be initialized before the listener is created. A
+ * listener must only be called from one thread at a time.
+ */
+public class WorldMapListener implements SimulationListener {
+
+    // the number of frames between the simulation and the world map
+    private static final int RING_SIZE = 64;
+
+    // the ring the world map reads
+    private final FrameRing ring = new FrameRing(RING_SIZE);
+
+    // the changes not yet published
+    private final FrameRing.Frame pending = new FrameRing.Frame();
+
+    // the index in pending of the change of each square in it
+    private final LongIntMap pendingIndex = new LongIntMap();
+
+    // the width of the world map
+    private final int width;
+
+    /**
+     * Create a listener that shows the simulation in the world map, which has
+     * the given width.
+     *
+     * @param width The width of the world map.
+     */
+    public WorldMapListener(int width) {
+        this.width = width;
+        WorldMap.follow(ring);
+    }
+
+    @Override
+    public void creatureAdded(Creature creature) {
+        drawCreature(creature);
+    }
+
+    @Override
+    public void creatureMoved(Creature creature, int fromX, int fromY) {
+        change(fromX, fromY, ' ', null, null);
+        drawCreature(creature);
+    }
+
+    @Override
+    public void creatureTurned(Creature creature) {
+        drawCreature(creature);
+    }
+
+    @Override
+    public void creatureInfected(Creature creature) {
+        drawCreature(creature);
+    }
+
+    @Override
+    public void tickFinished(long tick) {
+        if (pending.size() > 0 && ring.offer(pending, tick)) {
+            pendingIndex.clear();
+            pending.clear();
+        }
+    }
+
+    // note how the square of the given creature now looks
+    private void drawCreature(Creature creature) {
+        Species species = creature.species();
+        change(creature.x(), creature.y(), species.getName().charAt(0),
+            creature.direction(), species.getColor());
+    }
+
+    // note how the given square now looks, replacing any earlier change
+    private void change(int x, int y, char letter, Direction dir, Color color) {
+        long square = (long) y * width + x;
+        int index = pendingIndex.get(square);
+        if (index == LongIntMap.ABSENT) {
+            pendingIndex.put(square, pending.size());
+            pending.add(x, y, letter, dir, color);
+        } else {
+            pending.set(index, letter, dir, color);
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class represents the source of randomness of one world. It uses the
+ * SplitMix64 algorithm that also underlies java.util.SplittableRandom, but keeps
+ * its whole state in a single long, so that it can be saved and restored.
+ *
+ * Everything random in a simulation (positions, directions, turn order, and
+ * each creature's ifrandom branches) comes from the world's generator, so a
+ * simulation started with the same seed replays exactly. Each creature gets its
+ * own stream, split off when it is created, which keeps runs reproducible no
+ * matter which thread executes the creature.
+ */
+public class WorldRandom {
+
+    /**
+     * The amount a SplitMix64 state advances by at each step.
+     */
+    public static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    // the seed the generator started from
+    private final long seed;
+
+    // the current state
+    private long state;
+
+    /**
+     * Create a generator with the given seed.
+     *
+     * @param seed The seed.
+     */
+    public WorldRandom(long seed) {
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    /**
+     * Create a generator with an arbitrary seed.
+     */
+    public WorldRandom() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Get the seed the generator started from. A new generator with this seed
+     * produces the same values as this one did.
+     *
+     * @return The seed.
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Get the current state of the generator.
+     *
+     * @return The state.
+     */
+    public long state() {
+        return state;
+    }
+
+    /**
+     * Restore the generator to a state returned by state().
+     *
+     * @param state The state.
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Get a random long.
+     *
+     * @return A uniformly distributed long.
+     */
+    public long nextLong() {
+        state += GAMMA;
+        return mix64(state);
+    }
+
+    /**
+     * Get a random int between 0 (inclusive) and the given bound (exclusive).
+     *
+     * @param bound The upper bound, which must be positive.
+     * @return A uniformly distributed int in [0, bound).
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        state += GAMMA;
+        int r = mix32(state);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            // a power of two
+            return r & m;
+        }
+        // reject the values that would bias the result
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; ) {
+            state += GAMMA;
+            u = mix32(state) >>> 1;
+        }
+        return r;
+    }
+
+    /**
+     * Split off a new, independent generator. The values it produces are
+     * determined by the state of this generator.
+     *
+     * @return A new generator.
+     */
+    public WorldRandom split() {
+        return new WorldRandom(nextLong());
+    }
+
+    /**
+     * Randomly permute the given list, in the same way as
+     * Collections.shuffle.
+     *
+     * @param list The list to shuffle.
+     */
+    public <T> void shuffle(List<T> list) {
+        for (int i = list.size() - 1; i > 0; i--) {
+            list.set(i, list.set(nextInt(i + 1), list.get(i)));
+        }
+    }
+
+    /**
+     * Randomly permute the first count entries of the given array.
+     *
+     * @param array The array to shuffle.
+     * @param count The number of entries to shuffle.
+     */
+    public void shuffle(int[] array, int count) {
+        for (int i = count - 1; i > 0; i--) {
+            int j = nextInt(i + 1);
+            int swap = array[i];
+            array[i] = array[j];
+            array[j] = swap;
+        }
+    }
+
+    /**
+     * Advance a stream that is kept as a bare state, such as a creature's, by
+     * one step. A creature's stream is seeded with nextLong() when the creature
+     * is created.
+     *
+     * @param state The state of the stream.
+     * @return The next state of the stream.
+     */
+    public static long advance(long state) {
+        return state + GAMMA;
+    }
+
+    /**
+     * Get the coin flip of an ifrandom instruction from a stream state returned
+     * by advance.
+     *
+     * @param state The state of the stream.
+     * @return Whether the flip came up heads.
+     */
+    public static boolean heads(long state) {
+        return mix64(state) >= 0;
+    }
+
+    /**
+     * Scramble the bits of the given value (the SplitMix64 output function).
+     *
+     * @param z The value to scramble.
+     * @return The scrambled value.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // scramble the bits of the given value down to an int
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+}